@@ -0,0 +1,638 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.wrappit.WrapperGenerator.Feature;
+import com.comphenix.wrappit.WrapperGenerator.Modifiers;
+import com.comphenix.wrappit.io.OutputSink;
+import com.comphenix.wrappit.minecraft.CodeField;
+import com.comphenix.wrappit.minecraft.CodePacketInfo;
+import com.comphenix.wrappit.minecraft.CodePacketReader;
+import com.comphenix.wrappit.wiki.WikiPacketField;
+import com.comphenix.wrappit.wiki.WikiPacketInfo;
+import com.comphenix.wrappit.wiki.WikiPacketReader;
+import com.google.common.base.CaseFormat;
+import com.google.common.collect.Sets;
+
+/**
+ * Generates wrapper classes directly as bytecode, skipping the Java source and compiler entirely.
+ * <p>
+ * The wrappers have the same constructors and accessors as those of {@link WrapperGenerator}, except that every
+ * accessor uses the output type of its modifier as is, as there is no compiler to insert the casts to the wiki types.
+ * Of the features of the source wrappers, only {@link Feature#DIRECT_ACCESSORS} is supported.
+ */
+public class BytecodeGenerator implements ClassGenerator, Opcodes {
+	/**
+	 * Version of the generated bytecode. Increment this whenever the output of the generator changes.
+	 */
+	public static final int BYTECODE_VERSION = 2;
+
+	/**
+	 * Every feature that bytecode wrappers support.
+	 */
+	public static final Set<Feature> SUPPORTED_FEATURES = Sets.immutableEnumSet(Feature.DIRECT_ACCESSORS);
+
+	// Package of every wrapper
+	static final String WRAPPER_PACKAGE = "com/comphenix/packetwrapper/";
+
+	private static final String ABSTRACT_PACKET = WRAPPER_PACKAGE + "AbstractPacket";
+	private static final String PACKET_CONTAINER = "com/comphenix/protocol/events/PacketContainer";
+	private static final String PACKET_TYPE = "com/comphenix/protocol/PacketType";
+	private static final String STRUCTURE_MODIFIER = "com/comphenix/protocol/reflect/StructureModifier";
+	private static final String WRAPPERS = "com/comphenix/protocol/wrappers/";
+	private static final String FIELD_ACCESS_EXCEPTION = "com/comphenix/protocol/reflect/FieldAccessException";
+	private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+	private static final String METHOD_TYPE = "java/lang/invoke/MethodType";
+
+	private static final String PACKET_CONTAINER_DESC = "L" + PACKET_CONTAINER + ";";
+	private static final String PACKET_TYPE_DESC = "L" + PACKET_TYPE + ";";
+	private static final String STRUCTURE_MODIFIER_DESC = "L" + STRUCTURE_MODIFIER + ";";
+	private static final String METHOD_HANDLE_DESC = "L" + METHOD_HANDLE + ";";
+	private static final String FIELD_DESC = "Ljava/lang/reflect/Field;";
+	private static final String HANDLE_FACTORY_DESC = "(Ljava/lang/String;Ljava/lang/Class;)" + METHOD_HANDLE_DESC;
+
+	private final CodePacketReader codeReader;
+	private final WikiPacketReader wikiReader;
+	private final Set<Feature> features;
+	private final Map<String, Modifiers> inputLookup;
+	
+	// Internal names
+	private final String wrapperPackage;
+	private final String abstractPacket;
+
+	public BytecodeGenerator(CodePacketReader codeReader, WikiPacketReader wikiReader) {
+		this(codeReader, wikiReader, EnumSet.noneOf(Feature.class));
+	}
+
+	public BytecodeGenerator(CodePacketReader codeReader, WikiPacketReader wikiReader, Set<Feature> features) {
+		this(codeReader, wikiReader, features, WRAPPER_PACKAGE, ABSTRACT_PACKET);
+	}
+
+	/**
+	 * Construct a bytecode generator.
+	 * @param codeReader - the code reader.
+	 * @param wikiReader - the wiki reader, or NULL to name accessors after the Minecraft fields.
+	 * @param features - the features of the wrappers, all of which must be in {@link #SUPPORTED_FEATURES}.
+	 * @param wrapperPackage - the internal name of the package of every wrapper, such as <code>com/comphenix/packetwrapper/</code>.
+	 * @param abstractPacket - the internal name of the super class of every wrapper.
+	 */
+	public BytecodeGenerator(CodePacketReader codeReader, WikiPacketReader wikiReader, Set<Feature> features, 
+			String wrapperPackage, String abstractPacket) {
+		if (!SUPPORTED_FEATURES.containsAll(features))
+			throw new IllegalArgumentException("Bytecode wrappers only support " + SUPPORTED_FEATURES + ".");
+		this.codeReader = codeReader;
+		this.wikiReader = wikiReader;
+		this.features = Sets.immutableEnumSet(features);
+		this.inputLookup = Modifiers.getInputLookup();
+		this.wrapperPackage = wrapperPackage;
+		this.abstractPacket = abstractPacket;
+	}
+
+	@Override
+	public String getFileName(PacketType type) {
+		return Wrappit.getClassName(type) + ".class";
+	}
+
+	@Override
+	public String getInputs(PacketType type) throws IOException {
+		String wikiHash = wikiReader != null ? wikiReader.getTableHash(type) : "no-wiki";
+		String inputs = codeReader.getBytecodeHash(type) + " " + wikiHash + " bytecode-" + BYTECODE_VERSION + " code-" + CodePacketReader.MODEL_VERSION;
+		return features.isEmpty() ? inputs : inputs + " " + features;
+	}
+
+	@Override
+	public void generateClass(PacketType type, OutputSink sink) throws IOException {
+		byte[] data = generateClass(type);
+
+		try (OutputStream output = sink.openStream(getFileName(type))) {
+			output.write(data);
+		}
+	}
+
+	@Override
+	public void generateSupportClasses(OutputSink sink) throws IOException {
+		// Every wrapper is self-contained
+	}
+
+	/**
+	 * Generate the bytecode of the wrapper of a given packet.
+	 * @param type - the packet type.
+	 * @return The class file.
+	 * @throws IOException If the packet cannot be read.
+	 */
+	public byte[] generateClass(PacketType type) throws IOException {
+		CodePacketInfo codeInfo = codeReader.readPacket(type);
+		return generateClass(codeInfo, wikiReader != null ? wikiReader.readPacket(type) : getCodeFields(codeInfo));
+	}
+
+	/**
+	 * Describe the fields of a packet using its Minecraft field names, for when there is no wiki.
+	 * @param codeInfo - the packet.
+	 * @return The fields in network order.
+	 */
+	private WikiPacketInfo getCodeFields(CodePacketInfo codeInfo) {
+		List<WikiPacketField> fields = new ArrayList<>();
+		
+		for (CodeField field : codeInfo.getNetworkOrder()) {
+			fields.add(new WikiPacketField(field.getName(), field.getSimpleTypeName(), null));
+		}
+		return new WikiPacketInfo(codeInfo.getType(), fields);
+	}
+
+	/**
+	 * Retrieve the binary name of the wrapper of a given packet.
+	 * @param type - the packet type.
+	 * @return The binary name.
+	 */
+	public String getBinaryName(PacketType type) {
+		return (wrapperPackage + Wrappit.getClassName(type)).replace('/', '.');
+	}
+
+	byte[] generateClass(CodePacketInfo codeInfo, WikiPacketInfo wikiInfo) {
+		PacketType type = codeInfo.getType();
+		String className = wrapperPackage + Wrappit.getClassName(type);
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		writer.visit(V1_8, ACC_PUBLIC | ACC_SUPER, className, null, abstractPacket, null);
+		writer.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL, "TYPE", PACKET_TYPE_DESC, null, null).visitEnd();
+		writeConstructors(writer, className);
+
+		Set<String> methods = new HashSet<>();
+		Map<String, DirectHandle> directHandles = new LinkedHashMap<>();
+		int fieldIndex = 0;
+
+		for (WikiPacketField field : wikiInfo.getPacketFields()) {
+			if (fieldIndex < codeInfo.getNetworkOrder().size()) {
+				CodeField codeField = codeInfo.getNetworkOrder().get(fieldIndex);
+				Modifiers modifier = Modifiers.getByInputType(inputLookup, codeInfo.getTypeHierarchy(codeField));
+				String name = WrapperGenerator.getFieldName(field);
+
+				if (modifier == null) {
+					System.err.println("Cannot find type " + codeField.getTypeName() + " for field " + codeField.getName());
+				} else if (!methods.add(name)) {
+					// Would otherwise be a duplicate method
+					System.err.println("Skipping duplicate field " + name + " in " + className);
+				} else {
+					int memoryIndex = WrapperGenerator.getMemoryIndex(codeInfo, fieldIndex);
+					
+					writeGetMethod(writer, className, name, modifier, memoryIndex, getDirectHandle(codeField, name, modifier, false, directHandles));
+					writeSetMethod(writer, className, name, modifier, memoryIndex, getDirectHandle(codeField, name, modifier, true, directHandles));
+
+					// Same rule as the source backend
+					if (name.toLowerCase().contains("entityid") && modifier == Modifiers.INTEGERS && methods.add("getEntity")) {
+						writeGetEntityMethods(writer, className, fieldIndex);
+					}
+				}
+			}
+			fieldIndex++;
+		}
+
+		writeStaticInitializer(writer, className, type, directHandles);
+
+		if (!directHandles.isEmpty()) {
+			writeHandleFactory(writer, className, false);
+			writeHandleFactory(writer, className, true);
+			writeFindField(writer, className);
+		}
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	private void writeStaticInitializer(ClassWriter writer, String className, PacketType type, Map<String, DirectHandle> directHandles) {
+		String owner = PACKET_TYPE + "$" + Wrappit.getCamelCase(type.getProtocol()) + "$" + Wrappit.getCamelCase(type.getSender());
+
+		for (String constant : directHandles.keySet()) {
+			writer.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, constant, METHOD_HANDLE_DESC, null, null).visitEnd();
+		}
+
+		MethodVisitor mv = writer.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+		mv.visitCode();
+		mv.visitFieldInsn(GETSTATIC, owner, type.name(), PACKET_TYPE_DESC);
+		mv.visitFieldInsn(PUTSTATIC, className, "TYPE", PACKET_TYPE_DESC);
+
+		// The handles are found through TYPE, so they are initialized after it
+		for (Map.Entry<String, DirectHandle> entry : directHandles.entrySet()) {
+			DirectHandle handle = entry.getValue();
+
+			mv.visitLdcInsn(handle.fieldName);
+			visitClass(mv, handle.type);
+			mv.visitMethodInsn(INVOKESTATIC, className, handle.setter ? "setter" : "getter", HANDLE_FACTORY_DESC, false);
+			mv.visitFieldInsn(PUTSTATIC, className, entry.getKey(), METHOD_HANDLE_DESC);
+		}
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Declare the method handle of a field, if the field can be accessed without its modifier.
+	 * @param field - the field.
+	 * @param name - the name of the accessor.
+	 * @param modifier - the modifier of the field.
+	 * @param setter - TRUE if the handle writes the field, FALSE otherwise.
+	 * @param directHandles - every handle of the wrapper, by the name of its constant.
+	 * @return The name of the constant that holds the handle, or NULL if the modifier must be used instead.
+	 */
+	private String getDirectHandle(CodeField field, String name, Modifiers modifier, boolean setter, Map<String, DirectHandle> directHandles) {
+		if (!features.contains(Feature.DIRECT_ACCESSORS) || !WrapperGenerator.isDirect(field, modifier, setter))
+			return null;
+		String constant = CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, name) + (setter ? "_SETTER" : "_GETTER");
+
+		directHandles.put(constant, new DirectHandle(field.getName(), getOutputType(modifier), setter));
+		return constant;
+	}
+
+	private void writeHandleFactory(ClassWriter writer, String className, boolean setter) {
+		MethodVisitor mv = writer.visitMethod(ACC_PRIVATE | ACC_STATIC, setter ? "setter" : "getter", HANDLE_FACTORY_DESC, null, null);
+		Label start = new Label();
+		Label end = new Label();
+		Label handler = new Label();
+
+		// try { return MethodHandles.lookup().unreflectGetter(findField(name)).asType(methodType(type, Object.class)); }
+		mv.visitCode();
+		mv.visitTryCatchBlock(start, end, handler, "java/lang/IllegalAccessException");
+		mv.visitLabel(start);
+		mv.visitMethodInsn(INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;", false);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESTATIC, className, "findField", "(Ljava/lang/String;)" + FIELD_DESC, false);
+		mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandles$Lookup", setter ? "unreflectSetter" : "unreflectGetter",
+				"(" + FIELD_DESC + ")" + METHOD_HANDLE_DESC, false);
+
+		if (setter) {
+			// methodType(void.class, Object.class, type)
+			mv.visitFieldInsn(GETSTATIC, "java/lang/Void", "TYPE", "Ljava/lang/Class;");
+			mv.visitLdcInsn(Type.getType(Object.class));
+			mv.visitInsn(ICONST_1);
+			mv.visitTypeInsn(ANEWARRAY, "java/lang/Class");
+			mv.visitInsn(DUP);
+			mv.visitInsn(ICONST_0);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitInsn(AASTORE);
+			mv.visitMethodInsn(INVOKESTATIC, METHOD_TYPE, "methodType", 
+					"(Ljava/lang/Class;Ljava/lang/Class;[Ljava/lang/Class;)L" + METHOD_TYPE + ";", false);
+		} else {
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitLdcInsn(Type.getType(Object.class));
+			mv.visitMethodInsn(INVOKESTATIC, METHOD_TYPE, "methodType", "(Ljava/lang/Class;Ljava/lang/Class;)L" + METHOD_TYPE + ";", false);
+		}
+		mv.visitMethodInsn(INVOKEVIRTUAL, METHOD_HANDLE, "asType", "(L" + METHOD_TYPE + ";)" + METHOD_HANDLE_DESC, false);
+		mv.visitLabel(end);
+		mv.visitInsn(ARETURN);
+
+		// catch (IllegalAccessException e) { throw new FieldAccessException("Cannot access field " + name + ".", e); }
+		mv.visitLabel(handler);
+		mv.visitFrame(F_SAME1, 0, null, 1, new Object[] { "java/lang/IllegalAccessException" });
+		mv.visitVarInsn(ASTORE, 2);
+		mv.visitTypeInsn(NEW, FIELD_ACCESS_EXCEPTION);
+		mv.visitInsn(DUP);
+		visitMessage(mv, "Cannot access field ");
+		mv.visitVarInsn(ALOAD, 2);
+		mv.visitMethodInsn(INVOKESPECIAL, FIELD_ACCESS_EXCEPTION, "<init>", "(Ljava/lang/String;Ljava/lang/Throwable;)V", false);
+		mv.visitInsn(ATHROW);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private void writeFindField(ClassWriter writer, String className) {
+		MethodVisitor mv = writer.visitMethod(ACC_PRIVATE | ACC_STATIC, "findField", "(Ljava/lang/String;)" + FIELD_DESC, null, null);
+		Label found = new Label();
+
+		// Field field = FieldUtils.getField(TYPE.getPacketClass(), name, true);
+		mv.visitCode();
+		mv.visitFieldInsn(GETSTATIC, className, "TYPE", PACKET_TYPE_DESC);
+		mv.visitMethodInsn(INVOKEVIRTUAL, PACKET_TYPE, "getPacketClass", "()Ljava/lang/Class;", false);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitInsn(ICONST_1);
+		mv.visitMethodInsn(INVOKESTATIC, "com/comphenix/protocol/reflect/FieldUtils", "getField", 
+				"(Ljava/lang/Class;Ljava/lang/String;Z)" + FIELD_DESC, false);
+		mv.visitVarInsn(ASTORE, 1);
+
+		// if (field == null) throw new FieldAccessException("Cannot find field " + name + ".");
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitJumpInsn(IFNONNULL, found);
+		mv.visitTypeInsn(NEW, FIELD_ACCESS_EXCEPTION);
+		mv.visitInsn(DUP);
+		visitMessage(mv, "Cannot find field ");
+		mv.visitMethodInsn(INVOKESPECIAL, FIELD_ACCESS_EXCEPTION, "<init>", "(Ljava/lang/String;)V", false);
+		mv.visitInsn(ATHROW);
+
+		mv.visitLabel(found);
+		mv.visitFrame(F_APPEND, 1, new Object[] { "java/lang/reflect/Field" }, 0, null);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Push a message followed by the field name in the first local and a period.
+	 */
+	private void visitMessage(MethodVisitor mv, String message) {
+		String concat = "(Ljava/lang/String;)Ljava/lang/String;";
+
+		mv.visitLdcInsn(message);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "concat", concat, false);
+		mv.visitLdcInsn(".");
+		mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "concat", concat, false);
+	}
+
+	private void writeConstructors(ClassWriter writer, String className) {
+		String superDesc = "(" + PACKET_CONTAINER_DESC + PACKET_TYPE_DESC + ")V";
+
+		// super(new PacketContainer(TYPE), TYPE); handle.getModifier().writeDefaults();
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitTypeInsn(NEW, PACKET_CONTAINER);
+		mv.visitInsn(DUP);
+		mv.visitFieldInsn(GETSTATIC, className, "TYPE", PACKET_TYPE_DESC);
+		mv.visitMethodInsn(INVOKESPECIAL, PACKET_CONTAINER, "<init>", "(" + PACKET_TYPE_DESC + ")V", false);
+		mv.visitFieldInsn(GETSTATIC, className, "TYPE", PACKET_TYPE_DESC);
+		mv.visitMethodInsn(INVOKESPECIAL, abstractPacket, "<init>", superDesc, false);
+		visitHandle(mv, className);
+		mv.visitMethodInsn(INVOKEVIRTUAL, PACKET_CONTAINER, "getModifier", "()" + STRUCTURE_MODIFIER_DESC, false);
+		mv.visitMethodInsn(INVOKEVIRTUAL, STRUCTURE_MODIFIER, "writeDefaults", "()" + STRUCTURE_MODIFIER_DESC, false);
+		mv.visitInsn(POP);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		// super(packet, TYPE);
+		mv = writer.visitMethod(ACC_PUBLIC, "<init>", "(" + PACKET_CONTAINER_DESC + ")V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitFieldInsn(GETSTATIC, className, "TYPE", PACKET_TYPE_DESC);
+		mv.visitMethodInsn(INVOKESPECIAL, abstractPacket, "<init>", superDesc, false);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private void writeGetMethod(ClassWriter writer, String className, String name, Modifiers modifier, int memoryIndex, String directHandle) {
+		Type outputType = getOutputType(modifier);
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "get" + name, Type.getMethodDescriptor(outputType), null, null);
+
+		mv.visitCode();
+
+		if (directHandle != null) {
+			// return (T) HANDLE.invokeExact(handle.getHandle()); - reading a field never throws a checked exception
+			mv.visitFieldInsn(GETSTATIC, className, directHandle, METHOD_HANDLE_DESC);
+			visitPacket(mv, className);
+			mv.visitMethodInsn(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", 
+					Type.getMethodDescriptor(outputType, Type.getType(Object.class)), false);
+		} else {
+			// return handle.getXXX().read(index);
+			visitModifier(mv, className, modifier);
+			visitInteger(mv, memoryIndex);
+			mv.visitMethodInsn(INVOKEVIRTUAL, STRUCTURE_MODIFIER, "read", "(I)Ljava/lang/Object;", false);
+			visitUnbox(mv, outputType);
+		}
+		mv.visitInsn(outputType.getOpcode(IRETURN));
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private void writeSetMethod(ClassWriter writer, String className, String name, Modifiers modifier, int memoryIndex, String directHandle) {
+		Type inputType = getOutputType(modifier);
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "set" + name, Type.getMethodDescriptor(Type.VOID_TYPE, inputType), null, null);
+
+		mv.visitCode();
+
+		if (directHandle != null) {
+			// HANDLE.invokeExact(handle.getHandle(), value);
+			mv.visitFieldInsn(GETSTATIC, className, directHandle, METHOD_HANDLE_DESC);
+			visitPacket(mv, className);
+			mv.visitVarInsn(inputType.getOpcode(ILOAD), 1);
+			mv.visitMethodInsn(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", 
+					Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class), inputType), false);
+		} else {
+			// handle.getXXX().write(index, value);
+			visitModifier(mv, className, modifier);
+			visitInteger(mv, memoryIndex);
+			mv.visitVarInsn(inputType.getOpcode(ILOAD), 1);
+			visitBox(mv, inputType);
+			mv.visitMethodInsn(INVOKEVIRTUAL, STRUCTURE_MODIFIER, "write", "(ILjava/lang/Object;)" + STRUCTURE_MODIFIER_DESC, false);
+			mv.visitInsn(POP);
+		}
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private void writeGetEntityMethods(ClassWriter writer, String className, int fieldIndex) {
+		String getEntityDesc = "(Lorg/bukkit/World;)Lorg/bukkit/entity/Entity;";
+
+		// return handle.getEntityModifier(world).read(index);
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "getEntity", getEntityDesc, null, null);
+		mv.visitCode();
+		visitHandle(mv, className);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitMethodInsn(INVOKEVIRTUAL, PACKET_CONTAINER, "getEntityModifier", "(Lorg/bukkit/World;)" + STRUCTURE_MODIFIER_DESC, false);
+		visitInteger(mv, fieldIndex);
+		mv.visitMethodInsn(INVOKEVIRTUAL, STRUCTURE_MODIFIER, "read", "(I)Ljava/lang/Object;", false);
+		mv.visitTypeInsn(CHECKCAST, "org/bukkit/entity/Entity");
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		// return getEntity(event.getPlayer().getWorld());
+		mv = writer.visitMethod(ACC_PUBLIC, "getEntity", "(Lcom/comphenix/protocol/events/PacketEvent;)Lorg/bukkit/entity/Entity;", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitMethodInsn(INVOKEVIRTUAL, "com/comphenix/protocol/events/PacketEvent", "getPlayer", "()Lorg/bukkit/entity/Player;", false);
+		mv.visitMethodInsn(INVOKEINTERFACE, "org/bukkit/entity/Player", "getWorld", "()Lorg/bukkit/World;", true);
+		mv.visitMethodInsn(INVOKEVIRTUAL, className, "getEntity", getEntityDesc, false);
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private void visitHandle(MethodVisitor mv, String className) {
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, "handle", PACKET_CONTAINER_DESC);
+	}
+
+	/**
+	 * Push the Minecraft packet of the handle, <code>handle.getHandle()</code>.
+	 */
+	private void visitPacket(MethodVisitor mv, String className) {
+		visitHandle(mv, className);
+		mv.visitMethodInsn(INVOKEVIRTUAL, PACKET_CONTAINER, "getHandle", "()Ljava/lang/Object;", false);
+	}
+
+	/**
+	 * Push the class of a type, such as <code>int.class</code>.
+	 */
+	private void visitClass(MethodVisitor mv, Type type) {
+		if (type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY)
+			mv.visitLdcInsn(type);
+		else
+			mv.visitFieldInsn(GETSTATIC, getBoxedType(type).getInternalName(), "TYPE", "Ljava/lang/Class;");
+	}
+
+	/**
+	 * Push the structure modifier of the handle, such as <code>handle.getIntegers()</code>.
+	 */
+	private void visitModifier(MethodVisitor mv, String className, Modifiers modifier) {
+		String method = modifier.getMethodName();
+		int argument = method.indexOf('(');
+
+		visitHandle(mv, className);
+
+		if (argument >= 0 && method.indexOf(".class", argument) > 0) {
+			// Such as getSpecificModifier(Enum.class) - the class is always the input type
+			mv.visitLdcInsn(Type.getObjectType(modifier.getInputTypeName().replace('.', '/')));
+			mv.visitMethodInsn(INVOKEVIRTUAL, PACKET_CONTAINER, method.substring(0, argument),
+					"(Ljava/lang/Class;)" + STRUCTURE_MODIFIER_DESC, false);
+		} else {
+			String name = argument >= 0 ? method.substring(0, argument) : method;
+			mv.visitMethodInsn(INVOKEVIRTUAL, PACKET_CONTAINER, name, "()" + STRUCTURE_MODIFIER_DESC, false);
+		}
+	}
+
+	private void visitInteger(MethodVisitor mv, int value) {
+		if (value >= -1 && value <= 5)
+			mv.visitInsn(ICONST_0 + value);
+		else if (value <= Byte.MAX_VALUE)
+			mv.visitIntInsn(BIPUSH, value);
+		else
+			mv.visitIntInsn(SIPUSH, value);
+	}
+
+	private void visitUnbox(MethodVisitor mv, Type type) {
+		if (type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY) {
+			mv.visitTypeInsn(CHECKCAST, type.getInternalName());
+		} else {
+			Type boxed = getBoxedType(type);
+			mv.visitTypeInsn(CHECKCAST, boxed.getInternalName());
+			mv.visitMethodInsn(INVOKEVIRTUAL, boxed.getInternalName(), type.getClassName() + "Value", Type.getMethodDescriptor(type), false);
+		}
+	}
+
+	private void visitBox(MethodVisitor mv, Type type) {
+		if (type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY) {
+			Type boxed = getBoxedType(type);
+			mv.visitMethodInsn(INVOKESTATIC, boxed.getInternalName(), "valueOf", Type.getMethodDescriptor(boxed, type), false);
+		}
+	}
+
+	private static Type getBoxedType(Type primitive) {
+		switch (primitive.getSort()) {
+		case Type.BOOLEAN: return Type.getObjectType("java/lang/Boolean");
+		case Type.BYTE:    return Type.getObjectType("java/lang/Byte");
+		case Type.CHAR:    return Type.getObjectType("java/lang/Character");
+		case Type.SHORT:   return Type.getObjectType("java/lang/Short");
+		case Type.INT:     return Type.getObjectType("java/lang/Integer");
+		case Type.FLOAT:   return Type.getObjectType("java/lang/Float");
+		case Type.LONG:    return Type.getObjectType("java/lang/Long");
+		case Type.DOUBLE:  return Type.getObjectType("java/lang/Double");
+		default:
+			throw new IllegalArgumentException(primitive + " is not a primitive type.");
+		}
+	}
+
+	/**
+	 * Retrieve the bytecode type of the output type of a modifier.
+	 * @param modifier - the modifier.
+	 * @return The bytecode type.
+	 */
+	static Type getOutputType(Modifiers modifier) {
+		switch (modifier) {
+		case BLOCK:                 return Type.getObjectType("org/bukkit/Material");
+		case BLOCK_DATA:            return Type.getObjectType(WRAPPERS + "WrappedBlockData");
+		case BLOCK_POSITION:        return Type.getObjectType(WRAPPERS + "BlockPosition");
+		case BOOLEANS:              return Type.BOOLEAN_TYPE;
+		case BYTE_ARRAYS:           return Type.getType(byte[].class);
+		case BYTES:                 return Type.BYTE_TYPE;
+		case CHAT_BASE_COMPONENT:   return Type.getObjectType(WRAPPERS + "WrappedChatComponent");
+		case CHUNK_COORD_INT_PAIR:  return Type.getObjectType(WRAPPERS + "ChunkCoordIntPair");
+		case COMPONENT_ARRAY:       return Type.getType("[L" + WRAPPERS + "WrappedChatComponent;");
+		case DATA_WATCHER_MODIFIER: return Type.getObjectType(WRAPPERS + "WrappedDataWatcher");
+		case DIFFICULTIES:          return Type.getObjectType(WRAPPERS + "EnumWrappers$Difficulty");
+		case DOUBLES:               return Type.DOUBLE_TYPE;
+		case ENUMS:                 return Type.getType(Enum.class);
+		case ENUM_HAND:             return Type.getObjectType(WRAPPERS + "EnumWrappers$Hand");
+		case FLOATS:                return Type.FLOAT_TYPE;
+		case GAME_PROFILE:          return Type.getObjectType(WRAPPERS + "WrappedGameProfile");
+		case INTEGER_ARRAYS:        return Type.getType(int[].class);
+		case INTEGERS:              return Type.INT_TYPE;
+		case ITEM_LIST_MODIFIER:    return Type.getType(List.class);
+		case ITEM_MODIFIER:         return Type.getObjectType("org/bukkit/inventory/ItemStack");
+		case LONGS:                 return Type.LONG_TYPE;
+		case MAP:                   return Type.getType(Map.class);
+		case MINECRAFT_KEY:         return Type.getObjectType(WRAPPERS + "MinecraftKey");
+		case NBT_MODIFIER:          return Type.getObjectType(WRAPPERS + "nbt/NbtBase");
+		case POSITION_LIST:         return Type.getType(List.class);
+		case SET:                   return Type.getType(Set.class);
+		case PUBLIC_KEY_MODIFIER:   return Type.getType(PublicKey.class);
+		case SERVER_PING:           return Type.getObjectType(WRAPPERS + "WrappedServerPing");
+		case SHORTS:                return Type.SHORT_TYPE;
+		case SOUND_EFFECT:          return Type.getObjectType("org/bukkit/Sound");
+		case SOUND_CATEGORY:        return Type.getObjectType(WRAPPERS + "EnumWrappers$SoundCategory");
+		case STRING_ARRAYS:         return Type.getType(String[].class);
+		case STRINGS:               return Type.getType(String.class);
+		case UUID:                  return Type.getType(UUID.class);
+		case VEC3D:                 return Type.getObjectType("org/bukkit/util/Vector");
+		case WORLD_TYPE_MODIFIER:   return Type.getObjectType("org/bukkit/WorldType");
+		default:
+			throw new IllegalArgumentException("Unknown modifier " + modifier);
+		}
+	}
+
+	/**
+	 * A method handle of a field, created when the wrapper is initialized.
+	 */
+	private static class DirectHandle {
+		private final String fieldName;
+		private final Type type;
+		private final boolean setter;
+
+		public DirectHandle(String fieldName, Type type, boolean setter) {
+			this.fieldName = fieldName;
+			this.type = type;
+			this.setter = setter;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit;
+
+import java.io.IOException;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.wrappit.io.OutputSink;
+
+/**
+ * Represents a backend that generates the wrapper of a packet.
+ */
+public interface ClassGenerator {
+	/**
+	 * Retrieve the path of the file the wrapper of a given packet is written to.
+	 * @param type - the packet type.
+	 * @return The relative path.
+	 */
+	String getFileName(PacketType type);
+
+	/**
+	 * Retrieve a description of every input the wrapper of the given packet is generated from.
+	 * @param type - the packet type.
+	 * @return The inputs, as a single line of text.
+	 * @throws IOException If the code or wiki information cannot be read.
+	 */
+	String getInputs(PacketType type) throws IOException;
+
+	/**
+	 * Generate the wrapper of a given packet, writing it straight to a sink.
+	 * @param type - the packet type.
+	 * @param sink - the sink to write the file to.
+	 * @throws IOException If the packet cannot be read or the file cannot be written.
+	 */
+	void generateClass(PacketType type, OutputSink sink) throws IOException;
+
+	/**
+	 * Generate the classes shared by every wrapper, if any.
+	 * @param sink - the sink to write the files to.
+	 * @throws IOException If a file cannot be written.
+	 */
+	void generateSupportClasses(OutputSink sink) throws IOException;
+}
@@ -0,0 +1,570 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Source code of the classes shared by every generated wrapper, written once per run.
+ * <p>
+ * Each class is given without its license header, starting with the package declaration.
+ */
+class SupportClasses {
+	/**
+	 * The super class of every wrapper, as in PacketWrapper. Only used when no other super class is given.
+	 */
+	static final List<String> ABSTRACT_PACKET = Arrays.asList(
+			"package com.comphenix.packetwrapper;",
+			"",
+			"import java.lang.reflect.InvocationTargetException;",
+			"",
+			"import org.bukkit.entity.Player;",
+			"",
+			"import com.comphenix.protocol.PacketType;",
+			"import com.comphenix.protocol.ProtocolLibrary;",
+			"import com.comphenix.protocol.events.PacketContainer;",
+			"import com.google.common.base.Objects;",
+			"",
+			"public abstract class AbstractPacket {",
+			"    // The packet we will be modifying",
+			"    protected PacketContainer handle;",
+			"",
+			"    /**",
+			"     * Constructs a new strongly typed wrapper for the given packet.",
+			"     * @param handle - handle to the raw packet data.",
+			"     * @param type - the packet type.",
+			"     */",
+			"    protected AbstractPacket(PacketContainer handle, PacketType type) {",
+			"        // Make sure we're given a valid packet",
+			"        if (handle == null)",
+			"            throw new IllegalArgumentException(\"Packet handle cannot be NULL.\");",
+			"        if (!Objects.equal(handle.getType(), type))",
+			"            throw new IllegalArgumentException(handle.getHandle() + \" is not a packet of type \" + type);",
+			"        this.handle = handle;",
+			"    }",
+			"",
+			"    /**",
+			"     * Retrieve a handle to the raw packet data.",
+			"     * @return Raw packet data.",
+			"     */",
+			"    public PacketContainer getHandle() {",
+			"        return handle;",
+			"    }",
+			"",
+			"    /**",
+			"     * Send the current packet to the given receiver.",
+			"     * @param receiver - the receiver.",
+			"     * @throws RuntimeException If the packet cannot be sent.",
+			"     */",
+			"    public void sendPacket(Player receiver) {",
+			"        try {",
+			"            ProtocolLibrary.getProtocolManager().sendServerPacket(receiver, getHandle());",
+			"        } catch (InvocationTargetException e) {",
+			"            throw new RuntimeException(\"Cannot send packet.\", e);",
+			"        }",
+			"    }",
+			"",
+			"    /**",
+			"     * Send the current packet to all online players.",
+			"     */",
+			"    public void broadcastPacket() {",
+			"        ProtocolLibrary.getProtocolManager().broadcastServerPacket(getHandle());",
+			"    }",
+			"",
+			"    /**",
+			"     * Simulate receiving the current packet from the given sender.",
+			"     * @param sender - the sender.",
+			"     * @throws RuntimeException If the packet cannot be received.",
+			"     */",
+			"    public void receivePacket(Player sender) {",
+			"        try {",
+			"            ProtocolLibrary.getProtocolManager().recieveClientPacket(sender, getHandle());",
+			"        } catch (Exception e) {",
+			"            throw new RuntimeException(\"Cannot receive packet.\", e);",
+			"        }",
+			"    }",
+			"}"
+	);
+
+	/**
+	 * Reads and writes the data types of the protocol directly, used by the generated codecs.
+	 */
+	static final List<String> PACKET_CODECS = Arrays.asList(
+			"package com.comphenix.packetwrapper;",
+			"",
+			"import java.nio.charset.StandardCharsets;",
+			"import java.util.UUID;",
+			"",
+			"import io.netty.buffer.ByteBuf;",
+			"",
+			"/**",
+			" * Reads and writes the data types of the protocol, without the packet serializer of the server.",
+			" */",
+			"public final class PacketCodecs {",
+			"    private PacketCodecs() { }",
+			"",
+			"    public static int readVarInt(ByteBuf buffer) {",
+			"        int value = 0;",
+			"        int position = 0;",
+			"        byte current;",
+			"",
+			"        do {",
+			"            current = buffer.readByte();",
+			"            value |= (current & 0x7F) << position;",
+			"            position += 7;",
+			"",
+			"            if (position > 35)",
+			"                throw new IllegalArgumentException(\"VarInt is too big.\");",
+			"        } while ((current & 0x80) != 0);",
+			"        return value;",
+			"    }",
+			"",
+			"    public static void writeVarInt(ByteBuf buffer, int value) {",
+			"        while ((value & ~0x7F) != 0) {",
+			"            buffer.writeByte((value & 0x7F) | 0x80);",
+			"            value >>>= 7;",
+			"        }",
+			"        buffer.writeByte(value);",
+			"    }",
+			"",
+			"    public static long readVarLong(ByteBuf buffer) {",
+			"        long value = 0;",
+			"        int position = 0;",
+			"        byte current;",
+			"",
+			"        do {",
+			"            current = buffer.readByte();",
+			"            value |= (long) (current & 0x7F) << position;",
+			"            position += 7;",
+			"",
+			"            if (position > 70)",
+			"                throw new IllegalArgumentException(\"VarLong is too big.\");",
+			"        } while ((current & 0x80) != 0);",
+			"        return value;",
+			"    }",
+			"",
+			"    public static void writeVarLong(ByteBuf buffer, long value) {",
+			"        while ((value & ~0x7FL) != 0) {",
+			"            buffer.writeByte((int) (value & 0x7F) | 0x80);",
+			"            value >>>= 7;",
+			"        }",
+			"        buffer.writeByte((int) value);",
+			"    }",
+			"",
+			"    public static String readString(ByteBuf buffer) {",
+			"        int length = readVarInt(buffer);",
+			"        String value = buffer.toString(buffer.readerIndex(), length, StandardCharsets.UTF_8);",
+			"",
+			"        buffer.skipBytes(length);",
+			"        return value;",
+			"    }",
+			"",
+			"    public static void writeString(ByteBuf buffer, String value) {",
+			"        writeByteArray(buffer, value.getBytes(StandardCharsets.UTF_8));",
+			"    }",
+			"",
+			"    public static UUID readUUID(ByteBuf buffer) {",
+			"        return new UUID(buffer.readLong(), buffer.readLong());",
+			"    }",
+			"",
+			"    public static void writeUUID(ByteBuf buffer, UUID value) {",
+			"        buffer.writeLong(value.getMostSignificantBits());",
+			"        buffer.writeLong(value.getLeastSignificantBits());",
+			"    }",
+			"",
+			"    public static byte[] readByteArray(ByteBuf buffer) {",
+			"        byte[] value = new byte[readVarInt(buffer)];",
+			"",
+			"        buffer.readBytes(value);",
+			"        return value;",
+			"    }",
+			"",
+			"    public static void writeByteArray(ByteBuf buffer, byte[] value) {",
+			"        writeVarInt(buffer, value.length);",
+			"        buffer.writeBytes(value);",
+			"    }",
+			"",
+			"    public static int[] readVarIntArray(ByteBuf buffer) {",
+			"        int[] value = new int[readVarInt(buffer)];",
+			"",
+			"        for (int i = 0; i < value.length; i++)",
+			"            value[i] = readVarInt(buffer);",
+			"        return value;",
+			"    }",
+			"",
+			"    public static void writeVarIntArray(ByteBuf buffer, int[] value) {",
+			"        writeVarInt(buffer, value.length);",
+			"",
+			"        for (int element : value)",
+			"            writeVarInt(buffer, element);",
+			"    }",
+			"",
+			"    public static void skipVarInt(ByteBuf buffer) {",
+			"        // Also skips a VarLong",
+			"        while ((buffer.readByte() & 0x80) != 0) {",
+			"        }",
+			"    }",
+			"",
+			"    public static void skipVarIntArray(ByteBuf buffer) {",
+			"        for (int length = readVarInt(buffer); length > 0; length--)",
+			"            skipVarInt(buffer);",
+			"    }",
+			"",
+			"    public static byte[] readRawBytes(ByteBuf buffer) {",
+			"        byte[] value = new byte[buffer.readableBytes()];",
+			"",
+			"        buffer.readBytes(value);",
+			"        return value;",
+			"    }",
+			"}"
+	);
+
+	/**
+	 * Encodes a packet once and sends it to every receiver as a wire packet of ProtocolLib, used by broadcast() and freeze().
+	 */
+	static final List<String> PACKET_BROADCAST = Arrays.asList(
+			"package com.comphenix.packetwrapper;",
+			"",
+			"import java.lang.reflect.InvocationTargetException;",
+			"import java.util.Collection;",
+			"",
+			"import org.bukkit.entity.Player;",
+			"",
+			"import com.comphenix.protocol.ProtocolLibrary;",
+			"import com.comphenix.protocol.events.PacketContainer;",
+			"import com.comphenix.protocol.injector.netty.WirePacket;",
+			"",
+			"/**",
+			" * Sends encoded packets to players through ProtocolLib, which writes them to the connection as is.",
+			" * <p>",
+			" * Packet listeners are not informed of these packets, as they are never decoded again.",
+			" */",
+			"public final class PacketBroadcast {",
+			"    private PacketBroadcast() { }",
+			"",
+			"    /**",
+			"     * Send a packet to every given player, encoding it only once.",
+			"     * @param packet - the packet.",
+			"     * @param players - the receivers.",
+			"     */",
+			"    public static void broadcast(PacketContainer packet, Collection<? extends Player> players) {",
+			"        send(players, encode(packet));",
+			"    }",
+			"",
+			"    /**",
+			"     * Encode a packet along with its packet ID.",
+			"     * <p>",
+			"     * The result is never modified, so it may be sent to any number of players from any thread.",
+			"     * @param packet - the packet.",
+			"     * @return The encoded packet.",
+			"     */",
+			"    public static WirePacket encode(PacketContainer packet) {",
+			"        return WirePacket.fromPacket(packet);",
+			"    }",
+			"",
+			"    /**",
+			"     * Send an encoded packet to a player.",
+			"     * @param player - the receiver.",
+			"     * @param encoded - the packet, as returned by {@link #encode(PacketContainer)}.",
+			"     */",
+			"    public static void send(Player player, WirePacket encoded) {",
+			"        try {",
+			"            ProtocolLibrary.getProtocolManager().sendWirePacket(player, encoded);",
+			"        } catch (InvocationTargetException e) {",
+			"            throw new RuntimeException(\"Cannot send packet.\", e);",
+			"        }",
+			"    }",
+			"",
+			"    /**",
+			"     * Send an encoded packet to every given player.",
+			"     * @param players - the receivers.",
+			"     * @param encoded - the packet, as returned by {@link #encode(PacketContainer)}.",
+			"     */",
+			"    public static void send(Collection<? extends Player> players, WirePacket encoded) {",
+			"        for (Player player : players)",
+			"            send(player, encoded);",
+			"    }",
+			"}"
+	);
+
+	/**
+	 * Index of entities by entity ID, used by the getEntity() methods.
+	 */
+	static final List<String> ENTITY_INDEX = Arrays.asList(
+			"package com.comphenix.packetwrapper;",
+			"",
+			"import java.util.Collection;",
+			"import java.util.Collections;",
+			"import java.util.HashSet;",
+			"import java.util.Map;",
+			"import java.util.Set;",
+			"import java.util.concurrent.ConcurrentHashMap;",
+			"",
+			"import org.bukkit.Bukkit;",
+			"import org.bukkit.World;",
+			"import org.bukkit.entity.Entity;",
+			"import org.bukkit.entity.Player;",
+			"import org.bukkit.event.EventHandler;",
+			"import org.bukkit.event.EventPriority;",
+			"import org.bukkit.event.HandlerList;",
+			"import org.bukkit.event.Listener;",
+			"import org.bukkit.event.entity.EntityDeathEvent;",
+			"import org.bukkit.event.entity.EntitySpawnEvent;",
+			"import org.bukkit.event.player.PlayerChangedWorldEvent;",
+			"import org.bukkit.event.player.PlayerJoinEvent;",
+			"import org.bukkit.event.player.PlayerQuitEvent;",
+			"import org.bukkit.event.player.PlayerRespawnEvent;",
+			"import org.bukkit.event.world.ChunkLoadEvent;",
+			"import org.bukkit.event.world.ChunkUnloadEvent;",
+			"import org.bukkit.event.world.WorldUnloadEvent;",
+			"import org.bukkit.plugin.Plugin;",
+			"",
+			"/**",
+			" * Index of the entities of every world by entity ID, kept up to date from entity events.",
+			" * <p>",
+			" * Wrappers fall back to ProtocolLib when the index is disabled or has no valid entity for an ID.",
+			" * Entities removed without an event are dropped the next time the table of their world grows.",
+			" */",
+			"public final class EntityIndex implements Listener {",
+			"    private static volatile EntityIndex instance;",
+			"",
+			"    private final Map<World, EntityTable> worlds = new ConcurrentHashMap<>();",
+			"",
+			"    private EntityIndex() { }",
+			"",
+			"    /**",
+			"     * Start indexing the entities of every world.",
+			"     * @param plugin - the plugin that registers the index.",
+			"     */",
+			"    public static synchronized void enable(Plugin plugin) {",
+			"        if (instance != null)",
+			"            return;",
+			"        EntityIndex index = new EntityIndex();",
+			"",
+			"        for (World world : Bukkit.getWorlds()) {",
+			"            for (Entity entity : world.getEntities())",
+			"                index.add(entity);",
+			"        }",
+			"        Bukkit.getPluginManager().registerEvents(index, plugin);",
+			"        instance = index;",
+			"    }",
+			"",
+			"    /**",
+			"     * Stop indexing entities.",
+			"     */",
+			"    public static synchronized void disable() {",
+			"        if (instance != null) {",
+			"            HandlerList.unregisterAll(instance);",
+			"            instance = null;",
+			"        }",
+			"    }",
+			"",
+			"    /**",
+			"     * Retrieve an entity by its entity ID.",
+			"     * <p>",
+			"     * May be called from any thread.",
+			"     * @param world - the world of the entity.",
+			"     * @param entityId - the entity ID.",
+			"     * @return The entity, or NULL if it is not in the index.",
+			"     */",
+			"    public static Entity getEntity(World world, int entityId) {",
+			"        EntityIndex index = instance;",
+			"        EntityTable table = index != null ? index.worlds.get(world) : null;",
+			"        Entity entity = table != null ? table.get(entityId) : null;",
+			"",
+			"        // The table may be changed by the main thread while we read it",
+			"        if (entity == null || entity.getEntityId() != entityId || !entity.isValid())",
+			"            return null;",
+			"        return entity;",
+			"    }",
+			"",
+			"    private void add(Entity entity) {",
+			"        worlds.computeIfAbsent(entity.getWorld(), world -> new EntityTable()).put(entity);",
+			"    }",
+			"",
+			"    private void remove(World world, Entity entity) {",
+			"        remove(world, Collections.singleton(entity.getEntityId()));",
+			"    }",
+			"",
+			"    private void remove(World world, Collection<Integer> entityIds) {",
+			"        EntityTable table = worlds.get(world);",
+			"",
+			"        if (table != null)",
+			"            table.remove(entityIds);",
+			"    }",
+			"",
+			"    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)",
+			"    public void onEntitySpawn(EntitySpawnEvent event) {",
+			"        add(event.getEntity());",
+			"    }",
+			"",
+			"    @EventHandler(priority = EventPriority.MONITOR)",
+			"    public void onEntityDeath(EntityDeathEvent event) {",
+			"        // Players keep their entity when they respawn",
+			"        if (!(event.getEntity() instanceof Player))",
+			"            remove(event.getEntity().getWorld(), event.getEntity());",
+			"    }",
+			"",
+			"    @EventHandler(priority = EventPriority.MONITOR)",
+			"    public void onPlayerJoin(PlayerJoinEvent event) {",
+			"        add(event.getPlayer());",
+			"    }",
+			"",
+			"    @EventHandler(priority = EventPriority.MONITOR)",
+			"    public void onPlayerRespawn(PlayerRespawnEvent event) {",
+			"        add(event.getPlayer());",
+			"    }",
+			"",
+			"    @EventHandler(priority = EventPriority.MONITOR)",
+			"    public void onPlayerQuit(PlayerQuitEvent event) {",
+			"        remove(event.getPlayer().getWorld(), event.getPlayer());",
+			"    }",
+			"",
+			"    @EventHandler(priority = EventPriority.MONITOR)",
+			"    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {",
+			"        remove(event.getFrom(), event.getPlayer());",
+			"        add(event.getPlayer());",
+			"    }",
+			"",
+			"    @EventHandler(priority = EventPriority.MONITOR)",
+			"    public void onChunkLoad(ChunkLoadEvent event) {",
+			"        for (Entity entity : event.getChunk().getEntities())",
+			"            add(entity);",
+			"    }",
+			"",
+			"    @EventHandler(priority = EventPriority.MONITOR)",
+			"    public void onChunkUnload(ChunkUnloadEvent event) {",
+			"        Set<Integer> entityIds = new HashSet<>();",
+			"",
+			"        // Remove them all at once, as every removal copies the table",
+			"        for (Entity entity : event.getChunk().getEntities())",
+			"            entityIds.add(entity.getEntityId());",
+			"        if (!entityIds.isEmpty())",
+			"            remove(event.getChunk().getWorld(), entityIds);",
+			"    }",
+			"",
+			"    @EventHandler(priority = EventPriority.MONITOR)",
+			"    public void onWorldUnload(WorldUnloadEvent event) {",
+			"        worlds.remove(event.getWorld());",
+			"    }",
+			"",
+			"    /**",
+			"     * Open addressing hash table of entities, keyed by the entity ID of each entity.",
+			"     * <p>",
+			"     * Only changed by the main thread. Entities are added to the array in place, but never moved or cleared;",
+			"     * removing entities or growing publishes a new array instead. Other threads may therefore read it without a lock.",
+			"     */",
+			"    private static final class EntityTable {",
+			"        private static final int MINIMUM_CAPACITY = 64;",
+			"",
+			"        private volatile Entity[] entities = new Entity[MINIMUM_CAPACITY];",
+			"        private int size;",
+			"",
+			"        public Entity get(int entityId) {",
+			"            Entity[] table = entities;",
+			"            int mask = table.length - 1;",
+			"",
+			"            // Never full, so an empty slot is always found",
+			"            for (int i = hash(entityId) & mask; ; i = (i + 1) & mask) {",
+			"                Entity entity = table[i];",
+			"",
+			"                if (entity == null || entity.getEntityId() == entityId)",
+			"                    return entity;",
+			"            }",
+			"        }",
+			"",
+			"        public void put(Entity entity) {",
+			"            if ((size + 1) * 2 > entities.length)",
+			"                rebuild();",
+			"            if (insert(entities, entity))",
+			"                size++;",
+			"        }",
+			"",
+			"        public void remove(Collection<Integer> entityIds) {",
+			"            Entity[] table = entities;",
+			"            Entity[] copy = new Entity[table.length];",
+			"            int count = 0;",
+			"",
+			"            for (Entity entity : table) {",
+			"                if (entity != null && !entityIds.contains(entity.getEntityId())) {",
+			"                    insert(copy, entity);",
+			"                    count++;",
+			"                }",
+			"            }",
+			"",
+			"            // Readers may still be probing the old array, so it is left as it is",
+			"            if (count < size) {",
+			"                entities = copy;",
+			"                size = count;",
+			"            }",
+			"        }",
+			"",
+			"        private void rebuild() {",
+			"            int valid = 0;",
+			"",
+			"            for (Entity entity : entities) {",
+			"                if (entity != null && entity.isValid())",
+			"                    valid++;",
+			"            }",
+			"",
+			"            // Entities that are no longer valid are dropped here",
+			"            int capacity = MINIMUM_CAPACITY;",
+			"",
+			"            while (capacity < valid * 4)",
+			"                capacity <<= 1;",
+			"            Entity[] table = new Entity[capacity];",
+			"",
+			"            for (Entity entity : entities) {",
+			"                if (entity != null && entity.isValid())",
+			"                    insert(table, entity);",
+			"            }",
+			"            entities = table;",
+			"            size = valid;",
+			"        }",
+			"",
+			"        private static boolean insert(Entity[] table, Entity entity) {",
+			"            int mask = table.length - 1;",
+			"            int entityId = entity.getEntityId();",
+			"",
+			"            for (int i = hash(entityId) & mask; ; i = (i + 1) & mask) {",
+			"                if (table[i] == null) {",
+			"                    table[i] = entity;",
+			"                    return true;",
+			"                } else if (table[i].getEntityId() == entityId) {",
+			"                    table[i] = entity;",
+			"                    return false;",
+			"                }",
+			"            }",
+			"        }",
+			"",
+			"        private static int hash(int entityId) {",
+			"            int hash = entityId * 0x9E3779B9;",
+			"            return hash ^ (hash >>> 16);",
+			"        }",
+			"    }",
+			"}"
+	);
+
+	private SupportClasses() { }
+}
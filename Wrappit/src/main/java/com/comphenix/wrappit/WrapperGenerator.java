@@ -23,80 +23,109 @@
 package com.comphenix.wrappit;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
+import java.io.Writer;
+import java.lang.reflect.Array;
 import java.security.PublicKey;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
-import net.minecraft.server.v1_15_R1.*;
+import javax.lang.model.SourceVersion;
 
 import com.comphenix.protocol.PacketType;
+import com.comphenix.protocol.utility.MinecraftReflection;
+import com.comphenix.wrappit.io.OutputSink;
+import com.comphenix.wrappit.minecraft.CodeField;
 import com.comphenix.wrappit.minecraft.CodePacketInfo;
 import com.comphenix.wrappit.minecraft.CodePacketReader;
+import com.comphenix.wrappit.minecraft.WireType;
+import com.comphenix.wrappit.minecraft.WireType.Encoding;
 import com.comphenix.wrappit.utils.CaseFormating;
 import com.comphenix.wrappit.utils.IndentBuilder;
 import com.comphenix.wrappit.wiki.WikiPacketField;
 import com.comphenix.wrappit.wiki.WikiPacketInfo;
 import com.comphenix.wrappit.wiki.WikiPacketReader;
+import com.google.common.base.CaseFormat;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.mojang.authlib.GameProfile;
 
 
-public class WrapperGenerator {
+public class WrapperGenerator implements ClassGenerator {
 	public enum Modifiers {
-		BLOCK(Block.class,                            "Material",               "getBlocks()"),
-		BLOCK_DATA(IBlockData.class,                  "WrappedBlockData",       "getBlockData()"),
-		BLOCK_POSITION(BlockPosition.class,           "BlockPosition",          "getBlockPositionModifier()"),
+		// Minecraft classes are given by name, and resolved against the version of the running server
+		BLOCK("Block",                                "Material",               "getBlocks()"),
+		BLOCK_DATA("IBlockData",                      "WrappedBlockData",       "getBlockData()"),
+		BLOCK_POSITION("BlockPosition",               "BlockPosition",          "getBlockPositionModifier()"),
 		BOOLEANS(boolean.class,                       "boolean",                "getBooleans()"),
 		BYTE_ARRAYS(byte[].class,                     "byte[]",                 "getByteArrays()"),
 		BYTES(byte.class,                             "byte",                   "getBytes()"),
-		CHAT_BASE_COMPONENT(IChatBaseComponent.class, "WrappedChatComponent",   "getChatComponents()"),
-		CHUNK_COORD_INT_PAIR(ChunkCoordIntPair.class, "ChunkCoordIntPair",      "getChunkCoordIntPairs()"),
-		COMPONENT_ARRAY(IChatBaseComponent[].class,   "WrappedChatComponent[]", "getChatComponentArrays()"),
-		DATA_WATCHER_MODIFIER(DataWatcher.class,      "WrappedDataWatcher",     "getDataWatcherModifier()"),
-		DIFFICULTIES(EnumDifficulty.class,            "Difficulty",             "getDifficulties()"),
+		CHAT_BASE_COMPONENT("IChatBaseComponent",     "WrappedChatComponent",   "getChatComponents()"),
+		CHUNK_COORD_INT_PAIR("ChunkCoordIntPair",     "ChunkCoordIntPair",      "getChunkCoordIntPairs()"),
+		COMPONENT_ARRAY("IChatBaseComponent[]",       "WrappedChatComponent[]", "getChatComponentArrays()"),
+		DATA_WATCHER_MODIFIER("DataWatcher",          "WrappedDataWatcher",     "getDataWatcherModifier()"),
+		DIFFICULTIES("EnumDifficulty",                "Difficulty",             "getDifficulties()"),
 		DOUBLES(double.class,                         "double",                 "getDoubles()"),
 		ENUMS(Enum.class,                             "Enum<?>",                "getSpecificModifier(Enum.class)"),
-		ENUM_HAND(EnumHand.class,                     "Hand",                   "getHands()"),
+		ENUM_HAND("EnumHand",                         "Hand",                   "getHands()"),
 		FLOATS(float.class,                           "float",                  "getFloat()"),
 		GAME_PROFILE(GameProfile.class,               "WrappedGameProfile",     "getGameProfiles()"),
 		INTEGER_ARRAYS(int[].class,                   "int[]",                  "getIntegerArrays()"),
 		INTEGERS(int.class,                           "int",                    "getIntegers()"),
 		ITEM_LIST_MODIFIER(List.class,                "List<ItemStack>",        "getItemListModifier()"),
-		ITEM_MODIFIER(ItemStack.class,                "ItemStack",              "getItemModifier()"),
+		ITEM_MODIFIER("ItemStack",                    "ItemStack",              "getItemModifier()"),
 		LONGS(long.class,                             "long",                   "getLongs()"),
 		MAP(Map.class,                                "Map<?,?>",               "getSpecificModifier(Map.class)"),
-		MINECRAFT_KEY(MinecraftKey.class,             "MinecraftKey",           "getMinecraftKeys()"),
-		NBT_MODIFIER(NBTTagCompound.class,            "NbtBase<?>",             "getNbtModifier()"),
+		MINECRAFT_KEY("MinecraftKey",                 "MinecraftKey",           "getMinecraftKeys()"),
+		NBT_MODIFIER("NBTTagCompound",                "NbtBase<?>",             "getNbtModifier()"),
 		POSITION_LIST(List.class,                     "List<BlockPosition>",    "getBlockPositionCollectionModifier()"),
 		SET(Set.class,                                "Set<?>",                 "getSpecificModifier(Set.class)"),
 		PUBLIC_KEY_MODIFIER(PublicKey.class,          "PublicKey",              "getSpecificModifier(PublicKey.class)"),
-		SERVER_PING(ServerPing.class,                 "WrappedServerPing",      "getServerPings()"),
+		SERVER_PING("ServerPing",                     "WrappedServerPing",      "getServerPings()"),
 		SHORTS(short.class,                           "short",                  "getShorts()"),
-		SOUND_EFFECT(SoundEffect.class,               "Sound",                  "getSoundEffects()"),
-		SOUND_CATEGORY(SoundCategory.class,           "SoundCategory",          "getSoundCategories()"),
+		SOUND_EFFECT("SoundEffect",                   "Sound",                  "getSoundEffects()"),
+		SOUND_CATEGORY("SoundCategory",               "SoundCategory",          "getSoundCategories()"),
 		STRING_ARRAYS(String[].class,                 "String[]",               "getStringArrays()"),
 		STRINGS(String.class,                         "String",                 "getStrings()"),
-		UUID(UUID.class,                              "UUID",                   "getUUIDs"),
-		VEC3D(Vec3D.class,                            "Vector",                 "getVectors()"),
-		WORLD_TYPE_MODIFIER(WorldType.class,          "WorldType",              "getWorldTypeModifier()");
-
-		private static Map<Class<?>, Modifiers> inputLookup;
-
-		static {
-			inputLookup = new HashMap<>();
+		UUID(UUID.class,                              "UUID",                   "getUUIDs()"),
+		VEC3D("Vec3D",                                "Vector",                 "getVectors()"),
+		WORLD_TYPE_MODIFIER("WorldType",              "WorldType",              "getWorldTypeModifier()");
+
+		/**
+		 * Index every modifier by the binary name of its input type, resolved against the current Minecraft package.
+		 * <p>
+		 * The Minecraft package may change between generators, so each generator builds its own index.
+		 * @return The modifiers by input type.
+		 */
+		public static Map<String, Modifiers> getInputLookup() {
+			Map<String, Modifiers> lookup = new HashMap<>();
 
 			for (Modifiers modifier : values()) {
-				inputLookup.put(modifier.inputType, modifier);
+				lookup.put(modifier.getInputTypeName(), modifier);
 			}
+			return Collections.unmodifiableMap(lookup);
 		}
 
-		public static Modifiers getByInputType(Class<?> inputType) {
-			for (; inputType != null && !inputType.equals(Object.class); inputType = inputType.getSuperclass()) {
+		/**
+		 * Retrieve the modifier of the first type in a type hierarchy that has one.
+		 * @param inputLookup - the modifiers by input type, as returned by {@link #getInputLookup()}.
+		 * @param typeHierarchy - binary names of a type and its super classes.
+		 * @return The modifier, or NULL if not found.
+		 */
+		public static Modifiers getByInputType(Map<String, Modifiers> inputLookup, List<String> typeHierarchy) {
+			for (String inputType : typeHierarchy) {
 				Modifiers mod = inputLookup.get(inputType);
 
 				if (mod != null)
@@ -107,18 +136,51 @@ public class WrapperGenerator {
 			return null;
 		}
 
-		private Class<?> inputType;
-		private String outputType;
-		private String name;
+		private final Class<?> inputType;
+		private final String minecraftType;
+		private final String outputType;
+		private final String name;
 
 		Modifiers(Class<?> inputType, String outputType, String name) {
 			this.inputType = inputType;
+			this.minecraftType = null;
+			this.outputType = outputType;
+			this.name = name;
+		}
+
+		Modifiers(String minecraftType, String outputType, String name) {
+			this.inputType = null;
+			this.minecraftType = minecraftType;
 			this.outputType = outputType;
 			this.name = name;
 		}
 
+		/**
+		 * Retrieve the input type, loading it from the running server if it is a Minecraft class.
+		 * @return The input type.
+		 */
 		public Class<?> getInputType() {
-			return inputType;
+			if (inputType != null)
+				return inputType;
+			if (minecraftType.endsWith("[]"))
+				return Array.newInstance(MinecraftReflection.getMinecraftClass(getElementType()), 0).getClass();
+			return MinecraftReflection.getMinecraftClass(minecraftType);
+		}
+
+		/**
+		 * Retrieve the binary name of the input type, as returned by {@link Class#getName()}, without loading it.
+		 * @return The binary name.
+		 */
+		public String getInputTypeName() {
+			if (inputType != null)
+				return inputType.getName();
+			if (minecraftType.endsWith("[]"))
+				return "[L" + MinecraftReflection.getMinecraftPackage() + "." + getElementType() + ";";
+			return MinecraftReflection.getMinecraftPackage() + "." + minecraftType;
+		}
+
+		private String getElementType() {
+			return minecraftType.substring(0, minecraftType.length() - 2);
 		}
 
 		public String getMethodName() {
@@ -129,6 +191,31 @@ public class WrapperGenerator {
 			return outputType;
 		}
 
+		/**
+		 * Determine if this modifier returns the value of the field as is, without any conversion.
+		 * @return TRUE if it does, FALSE otherwise.
+		 */
+		public boolean isIdentity() {
+			switch (this) {
+			case BOOLEANS:
+			case BYTE_ARRAYS:
+			case BYTES:
+			case DOUBLES:
+			case FLOATS:
+			case INTEGER_ARRAYS:
+			case INTEGERS:
+			case LONGS:
+			case PUBLIC_KEY_MODIFIER:
+			case SHORTS:
+			case STRING_ARRAYS:
+			case STRINGS:
+			case UUID:
+				return true;
+			default:
+				return false;
+			}
+		}
+
 		public boolean isWrapper() {
 			switch (this) {
 			case BLOCK:
@@ -147,8 +234,177 @@ public class WrapperGenerator {
 		}
 	}
 
+	/**
+	 * Optional changes to the generated wrappers.
+	 */
+	public enum Feature {
+		/**
+		 * Resolve each structure modifier once per wrapper, instead of on every call.
+		 */
+		CACHED_MODIFIERS,
+
+		/**
+		 * Read and write fields that need no conversion through method handles, resolved once per wrapper class.
+		 * <p>
+		 * Each handle has the exact type of its field, so primitive fields are never boxed.
+		 */
+		DIRECT_ACCESSORS,
+
+		/**
+		 * Read and write every field of a packet through one call, using a snapshot that does not share its arrays and collections.
+		 */
+		SNAPSHOTS,
+
+		/**
+		 * Create packets through a fluent builder, which writes each field exactly once instead of writing defaults first.
+		 */
+		BUILDERS,
+
+		/**
+		 * Allow a wrapper to be pointed at another packet, and reuse one wrapper per thread.
+		 */
+		REBINDING,
+
+		/**
+		 * Read and write the fields of a packet straight from a buffer, without creating the Minecraft packet.
+		 */
+		CODECS,
+
+		/**
+		 * Inspect a packet in a buffer through a read-only view, which only decodes the fields that are accessed.
+		 */
+		VIEWS,
+
+		/**
+		 * Send a packet to many players at once, encoding it only once.
+		 */
+		BROADCAST,
+
+		/**
+		 * Encode a packet once, and send the encoded packet until one of its fields is set.
+		 */
+		FREEZING,
+
+		/**
+		 * Look up the entity of a packet in an index kept up to date from entity events, instead of through the world.
+		 */
+		ENTITY_INDEX;
+	}
+
+	/**
+	 * The generated code that reads and writes each encoding of the packet serializer.
+	 */
+	private enum WireFormat {
+		VAR_INT("int",          "PacketCodecs.readVarInt(buffer)",      "PacketCodecs.writeVarInt(buffer, %s)",      "PacketCodecs.skipVarInt(buffer)"),
+		VAR_LONG("long",        "PacketCodecs.readVarLong(buffer)",     "PacketCodecs.writeVarLong(buffer, %s)",     "PacketCodecs.skipVarInt(buffer)"),
+		BOOLEAN("boolean",      "buffer.readBoolean()",                 "buffer.writeBoolean(%s)",                   "buffer.skipBytes(1)"),
+		BYTE("byte",            "buffer.readByte()",                    "buffer.writeByte(%s)",                      "buffer.skipBytes(1)"),
+		SHORT("short",          "buffer.readShort()",                   "buffer.writeShort(%s)",                     "buffer.skipBytes(2)"),
+		INT("int",              "buffer.readInt()",                     "buffer.writeInt(%s)",                       "buffer.skipBytes(4)"),
+		LONG("long",            "buffer.readLong()",                    "buffer.writeLong(%s)",                      "buffer.skipBytes(8)"),
+		FLOAT("float",          "buffer.readFloat()",                   "buffer.writeFloat(%s)",                     "buffer.skipBytes(4)"),
+		DOUBLE("double",        "buffer.readDouble()",                  "buffer.writeDouble(%s)",                    "buffer.skipBytes(8)"),
+		STRING("String",        "PacketCodecs.readString(buffer)",      "PacketCodecs.writeString(buffer, %s)",      "buffer.skipBytes(PacketCodecs.readVarInt(buffer))"),
+		UUID("java.util.UUID",  "PacketCodecs.readUUID(buffer)",        "PacketCodecs.writeUUID(buffer, %s)",        "buffer.skipBytes(16)"),
+		BLOCK_POSITION("long",  "buffer.readLong()",                    "buffer.writeLong(%s)",                      "buffer.skipBytes(8)"),
+		ENUM("int",             "PacketCodecs.readVarInt(buffer)",      "PacketCodecs.writeVarInt(buffer, %s)",      "PacketCodecs.skipVarInt(buffer)"),
+		BYTE_ARRAY("byte[]",    "PacketCodecs.readByteArray(buffer)",   "PacketCodecs.writeByteArray(buffer, %s)",   "buffer.skipBytes(PacketCodecs.readVarInt(buffer))"),
+		VAR_INT_ARRAY("int[]",  "PacketCodecs.readVarIntArray(buffer)", "PacketCodecs.writeVarIntArray(buffer, %s)", "PacketCodecs.skipVarIntArray(buffer)"),
+		RAW_BYTES("byte[]",     "PacketCodecs.readRawBytes(buffer)",    "buffer.writeBytes(%s)",                     "buffer.skipBytes(buffer.readableBytes())");
+
+		/**
+		 * Retrieve the format of a wire type.
+		 * @param wireType - the wire type, or NULL.
+		 * @return The format, or NULL if the wire type is unknown or written by some other method.
+		 */
+		public static WireFormat of(WireType wireType) {
+			if (wireType == null || wireType.getEncoding() == Encoding.OTHER)
+				return null;
+			return valueOf(wireType.getEncoding().name());
+		}
+
+		private final String type;
+		private final String read;
+		private final String write;
+		private final String skip;
+
+		WireFormat(String type, String read, String write, String skip) {
+			this.type = type;
+			this.read = read;
+			this.write = write;
+			this.skip = skip;
+		}
+	}
+
+	/**
+	 * The state of a single wrapper while it is being written.
+	 */
+	private static class WrapperContext {
+		private final CodePacketInfo codeInfo;
+
+		// Modifiers cached by the wrapper, in the order they are first used
+		private final Set<Modifiers> cachedModifiers = new LinkedHashSet<>();
+
+		// Method handles of the wrapper, by constant name
+		private final Map<String, String> directHandles = new LinkedHashMap<>();
+
+		// Type of every field with both a getter and a setter, by accessor name in network order
+		private final Map<String, String> accessors = new LinkedHashMap<>();
+
+		// The field behind every accessor, by accessor name
+		private final Map<String, CodeField> accessorFields = new HashMap<>();
+
+		// Names of the generated accessors, so that none is declared twice
+		private final Set<String> names = new HashSet<>();
+
+		// Classes referred to by the members, which must be imported
+		private final Set<String> imports = new HashSet<>();
+
+		public WrapperContext(CodePacketInfo codeInfo) {
+			this.codeInfo = codeInfo;
+		}
+	}
+
+	/**
+	 * Version of the generated code. Increment this whenever the output of the generator changes,
+	 * so that incremental runs regenerate every wrapper.
+	 */
+	public static final int TEMPLATE_VERSION = 13;
+
 	private static final String NEWLN = System.getProperty("line.separator");
 
+	// Every class the generated code may refer to outside of java.lang, by simple name
+	private static final Map<String, String> IMPORTS = ImmutableMap.<String, String>builder()
+			.put("BlockPosition", "com.comphenix.protocol.wrappers.BlockPosition")
+			.put("ChunkCoordIntPair", "com.comphenix.protocol.wrappers.ChunkCoordIntPair")
+			.put("Difficulty", "com.comphenix.protocol.wrappers.EnumWrappers.Difficulty")
+			.put("Entity", "org.bukkit.entity.Entity")
+			.put("Hand", "com.comphenix.protocol.wrappers.EnumWrappers.Hand")
+			.put("ItemStack", "org.bukkit.inventory.ItemStack")
+			.put("List", "java.util.List")
+			.put("Map", "java.util.Map")
+			.put("Material", "org.bukkit.Material")
+			.put("MinecraftKey", "com.comphenix.protocol.wrappers.MinecraftKey")
+			.put("NbtBase", "com.comphenix.protocol.wrappers.nbt.NbtBase")
+			.put("PacketEvent", "com.comphenix.protocol.events.PacketEvent")
+			.put("PublicKey", "java.security.PublicKey")
+			.put("Set", "java.util.Set")
+			.put("Sound", "org.bukkit.Sound")
+			.put("SoundCategory", "com.comphenix.protocol.wrappers.EnumWrappers.SoundCategory")
+			.put("StructureModifier", "com.comphenix.protocol.reflect.StructureModifier")
+			.put("UUID", "java.util.UUID")
+			.put("Vector", "org.bukkit.util.Vector")
+			.put("World", "org.bukkit.World")
+			.put("WorldType", "org.bukkit.WorldType")
+			.put("WrappedBlockData", "com.comphenix.protocol.wrappers.WrappedBlockData")
+			.put("WrappedChatComponent", "com.comphenix.protocol.wrappers.WrappedChatComponent")
+			.put("WrappedDataWatcher", "com.comphenix.protocol.wrappers.WrappedDataWatcher")
+			.put("WrappedGameProfile", "com.comphenix.protocol.wrappers.WrappedGameProfile")
+			.put("WrappedServerPing", "com.comphenix.protocol.wrappers.WrappedServerPing")
+			.build();
+
+	// Primitive types in the order they may be widened to
+	private static final List<String> NUMERIC_TYPES = Arrays.asList("byte", "short", "int", "long", "float", "double");
 	private static final String[] HEADER = {
 		"/**",
 		" * This file is part of PacketWrapper.",
@@ -170,40 +426,111 @@ public class WrapperGenerator {
 		" */"
 	};
 
-	private CodePacketReader codeReader;
+	// Shared between worker threads, so nothing here may be modified after construction
+	private final CodePacketReader codeReader;
 
-	private Set<String> ignoreArray = new HashSet<String>(Arrays.asList("array", "of"));
-	private WikiPacketReader wikiReader;
+	private final Set<String> ignoreArray = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("array", "of")));
+	private final WikiPacketReader wikiReader;
+	private final Set<Feature> features;
+	private final Map<String, Modifiers> inputLookup;
 
 	public WrapperGenerator(CodePacketReader codeReader, WikiPacketReader wikiReader) {
+		this(codeReader, wikiReader, EnumSet.noneOf(Feature.class));
+	}
+
+	public WrapperGenerator(CodePacketReader codeReader, WikiPacketReader wikiReader, Set<Feature> features) {
 		this.codeReader = codeReader;
 		this.wikiReader = wikiReader;
+		this.features = Sets.immutableEnumSet(features);
+		this.inputLookup = Modifiers.getInputLookup();
 	}
 
+	@Override
+	public String getInputs(PacketType type) throws IOException {
+		String inputs = codeReader.getBytecodeHash(type) + " " + wikiReader.getTableHash(type) + " " + TEMPLATE_VERSION +
+				" code-" + CodePacketReader.MODEL_VERSION;
+		return features.isEmpty() ? inputs : inputs + " " + features;
+	}
+
+	@Override
+	public String getFileName(PacketType type) {
+		return Wrappit.getClassName(type) + ".java";
+	}
+
+	/**
+	 * Generate the source code of the wrapper of a given packet.
+	 * @param type - the packet type.
+	 * @return The source code.
+	 * @throws IOException If the packet cannot be read.
+	 */
 	public String generateClass(PacketType type) throws IOException {
+		return generateClass(codeReader.readPacket(type), wikiReader.readPacket(type));
+	}
+
+	String generateClass(CodePacketInfo codeInfo, WikiPacketInfo wikiInfo) throws IOException {
 		StringBuilder builder = new StringBuilder();
-		IndentBuilder indent = new IndentBuilder(builder, 1);
+		writeClass(codeInfo, wikiInfo, builder);
+		return builder.toString();
+	}
+
+	@Override
+	public void generateSupportClasses(OutputSink sink) throws IOException {
+		if (usesWireFormats()) {
+			writeSupportClass("PacketCodecs", SupportClasses.PACKET_CODECS, sink);
+		}
+		if (features.contains(Feature.ENTITY_INDEX)) {
+			writeSupportClass("EntityIndex", SupportClasses.ENTITY_INDEX, sink);
+		}
+		if (usesPacketBroadcast()) {
+			writeSupportClass("PacketBroadcast", SupportClasses.PACKET_BROADCAST, sink);
+		}
+	}
+
+	/**
+	 * Generate the super class of every wrapper, for when the wrappers are compiled without PacketWrapper.
+	 * @param sink - the output.
+	 * @throws IOException If the class cannot be written.
+	 */
+	public static void generateAbstractPacket(OutputSink sink) throws IOException {
+		writeSupportClass("AbstractPacket", SupportClasses.ABSTRACT_PACKET, sink);
+	}
+
+	private static void writeSupportClass(String className, List<String> lines, OutputSink sink) throws IOException {
+		try (Writer writer = sink.openWriter(className + ".java")) {
+			for (String line : HEADER) {
+				writer.append(line).append(NEWLN);
+			}
+			for (String line : lines) {
+				writer.append(line).append(NEWLN);
+			}
+		}
+	}
 
+	@Override
+	public void generateClass(PacketType type, OutputSink sink) throws IOException {
+		// Read everything before the file is opened, so a packet that cannot be read leaves no partial file behind
 		CodePacketInfo codeInfo = codeReader.readPacket(type);
 		WikiPacketInfo wikiInfo = wikiReader.readPacket(type);
 
+		try (Writer writer = sink.openWriter(getFileName(type))) {
+			writeClass(codeInfo, wikiInfo, writer);
+			writer.append(NEWLN);
+		}
+	}
+
+	private void writeClass(CodePacketInfo codeInfo, WikiPacketInfo wikiInfo, Appendable builder) throws IOException {
+		// The imports are only known once the members have been written
+		StringBuilder members = new StringBuilder();
+		IndentBuilder indent = new IndentBuilder(members, 1);
+		WrapperContext context = new WrapperContext(codeInfo);
+		PacketType type = codeInfo.getType();
+
 		// Java style
-		String className = "Wrapper" + Wrappit.getCamelCase(type.getProtocol()) + Wrappit.getCamelCase(type.getSender())
-				+ Wrappit.getCamelCase(type.name());
+		String className = Wrappit.getClassName(type);
 
 		// Current field index
 		int fieldIndex = 0;
 
-		for (String header : HEADER) {
-			builder.append(header + NEWLN);
-		}
-
-		builder.append("package com.comphenix.packetwrapper;").append(NEWLN).append(NEWLN);
-		builder.append("import com.comphenix.protocol.PacketType;").append(NEWLN);
-		builder.append("import com.comphenix.protocol.events.PacketContainer;").append(NEWLN).append(NEWLN);
-		builder.append("public class ").append(className).append(" extends AbstractPacket {").append(NEWLN)
-				.append(NEWLN);
-
 		indent.appendLine("public static final PacketType TYPE = " + getReference(type) + ";");
 		indent.appendLine("");
 
@@ -219,17 +546,22 @@ public class WrapperGenerator {
 
 		for (WikiPacketField field : wikiInfo.getPacketFields()) {
 			if (fieldIndex < codeInfo.getNetworkOrder().size()) {
-				Field codeField = codeInfo.getNetworkOrder().get(fieldIndex);
-				Modifiers modifier = Modifiers.getByInputType(codeField.getType());
+				CodeField codeField = codeInfo.getNetworkOrder().get(fieldIndex);
+				Modifiers modifier = Modifiers.getByInputType(inputLookup, codeInfo.getTypeHierarchy(codeField));
 
 				if (modifier == null) {
 					indent.appendLine("// Cannot find type for " + codeField.getName());
-					System.err.println("Cannot find type " + codeField.getType() + " for field " + codeField.getName());
+					System.err.println("Cannot find type " + codeField.getTypeName() + " for field " + codeField.getName());
+					continue;
+				}
+				if (!context.names.add(getFieldName(field))) {
+					indent.appendLine("// Cannot generate duplicate field " + field.getFieldName());
+					fieldIndex++;
 					continue;
 				}
 
 				try {
-					writeGetMethod(indent, fieldIndex, modifier, codeInfo, field);
+					writeGetMethod(indent, fieldIndex, modifier, context, field);
 				} catch (Throwable ex) {
 					indent.appendLine("// Cannot generate getter " + codeField.getName());
 					System.err.println("Failed to generate getter " + codeField.getName());
@@ -237,9 +569,10 @@ public class WrapperGenerator {
 				}
 
 				try {
-					writeSetMethod(indent, fieldIndex, modifier, codeInfo, field);
+					writeSetMethod(indent, fieldIndex, modifier, context, field);
 				} catch (Throwable ex) {
 					indent.appendLine("// Cannot generate setter " + codeField.getName());
+					context.accessors.remove(getFieldName(field));
 					System.err.println("Failed to generate setter " + codeField.getName());
 					ex.printStackTrace();
 				}
@@ -250,11 +583,757 @@ public class WrapperGenerator {
 			fieldIndex++;
 		}
 
+		if (features.contains(Feature.SNAPSHOTS)) {
+			writeSnapshot(indent, context);
+		}
+		if (features.contains(Feature.BUILDERS)) {
+			writeBuilder(indent, context, className);
+		}
+		if (features.contains(Feature.REBINDING)) {
+			writeRebind(indent, context, className);
+		}
+		if (usesWireFormats()) {
+			writeWireClasses(indent, context, wikiInfo);
+		}
+		if (features.contains(Feature.BROADCAST)) {
+			writeBroadcast(indent);
+		}
+		if (features.contains(Feature.FREEZING)) {
+			writeFreeze(indent, className);
+		}
+		writeCachedModifiers(indent, context);
+		writeDirectHandles(indent, context);
+
+		for (String header : HEADER) {
+			builder.append(header).append(NEWLN);
+		}
+
+		builder.append("package com.comphenix.packetwrapper;").append(NEWLN).append(NEWLN);
+		writeImports(getImports(context), builder);
+		builder.append("public class ").append(className).append(" extends AbstractPacket {").append(NEWLN)
+				.append(NEWLN);
+		builder.append(members);
 		builder.append("}");
-		return builder.toString();
 	}
 
-	private String getFieldName(WikiPacketField field) {
+	private void writeSnapshot(IndentBuilder indent, WrapperContext context) throws IOException {
+		List<String> getters = new ArrayList<>();
+		List<String> parameters = new ArrayList<>();
+
+		for (Map.Entry<String, String> entry : context.accessors.entrySet()) {
+			getters.add("get" + entry.getKey() + "()");
+			parameters.add(entry.getValue() + " " + getVariableName(entry.getKey()));
+		}
+
+		indent.appendLine("/**");
+		indent.appendLine(" * Retrieve every field of this packet at once.");
+		indent.appendLine(" * @return A snapshot of the fields.");
+		indent.appendLine(" */");
+		indent.appendLine("public Snapshot readAll() {");
+		indent.incrementIndent().appendLine("return new Snapshot(" + Joiner.on(", ").join(getters) + ");");
+		indent.appendLine("}" + NEWLN);
+
+		indent.appendLine("/**");
+		indent.appendLine(" * Set every field of this packet at once.");
+		indent.appendLine(" * @param snapshot - the new fields.");
+		indent.appendLine(" */");
+		indent.appendLine("public void writeAll(Snapshot snapshot) {");
+		for (String name : context.accessors.keySet()) {
+			indent.incrementIndent().appendLine("set" + name + "(snapshot.get" + name + "());");
+		}
+		indent.appendLine("}" + NEWLN);
+
+		// The snapshot itself
+		IndentBuilder body = indent.incrementIndent();
+
+		indent.appendLine("/**");
+		indent.appendLine(" * The fields of this packet, in network order.");
+		indent.appendLine(" * <p>");
+		indent.appendLine(" * Arrays and collections are copied when they are given and when they are retrieved, so they are never shared");
+		indent.appendLine(" * with a packet. Any other mutable value, such as a wrapped Minecraft object, is shared with the packet it was read from.");
+		indent.appendLine(" */");
+		indent.appendLine("public static final class Snapshot {");
+		for (String parameter : parameters) {
+			body.appendLine("private final " + parameter + ";");
+		}
+		body.appendLine("");
+		body.appendLine("public Snapshot(" + Joiner.on(", ").join(parameters) + ") {");
+		for (Map.Entry<String, String> entry : context.accessors.entrySet()) {
+			String variable = getVariableName(entry.getKey());
+			body.incrementIndent().appendLine("this." + variable + " = " + getCopy(entry.getValue(), variable, context) + ";");
+		}
+		body.appendLine("}" + NEWLN);
+
+		for (Map.Entry<String, String> entry : context.accessors.entrySet()) {
+			body.appendLine("public " + entry.getValue() + " get" + entry.getKey() + "() {");
+			body.incrementIndent().appendLine("return " + getCopy(entry.getValue(), getVariableName(entry.getKey()), context) + ";");
+			body.appendLine("}" + NEWLN);
+		}
+		indent.appendLine("}" + NEWLN);
+	}
+
+	/**
+	 * Retrieve an expression that copies the given value if it is an array or a collection.
+	 * @param type - the type of the value.
+	 * @param variable - the variable that holds the value.
+	 * @param context - the current wrapper.
+	 * @return The copy, or the variable itself if the value is not copied.
+	 */
+	private static String getCopy(String type, String variable, WrapperContext context) {
+		String copy;
+
+		if (type.endsWith("[]")) {
+			copy = variable + ".clone()";
+		} else if (type.startsWith("List<")) {
+			copy = "new ArrayList<>(" + variable + ")";
+			context.imports.add("java.util.ArrayList");
+		} else if (type.startsWith("Set<")) {
+			copy = "new HashSet<>(" + variable + ")";
+			context.imports.add("java.util.HashSet");
+		} else if (type.startsWith("Map<")) {
+			copy = "new HashMap<>(" + variable + ")";
+			context.imports.add("java.util.HashMap");
+		} else {
+			return variable;
+		}
+		return variable + " != null ? " + copy + " : null";
+	}
+
+	private static final List<String> BUILDER_DEFAULT_LINES = Arrays.asList(
+			"private static void writeDefault(Object target, int index) {",
+			"    Field field = DEFAULTED_FIELDS[index];",
+			"",
+			"    try {",
+			"        // The packet constructor may have given the field a value already",
+			"        if (field.get(target) == null)",
+			"            field.set(target, DefaultInstances.DEFAULT.getDefault(field.getType()));",
+			"    } catch (IllegalAccessException e) {",
+			"        throw new FieldAccessException(\"Cannot write default value of \" + field.getName() + \".\", e);",
+			"    }",
+			"}" + NEWLN,
+
+			"private static Field[] findFields(String... names) {",
+			"    Field[] fields = new Field[names.length];",
+			"",
+			"    for (int i = 0; i < names.length; i++) {",
+			"        fields[i] = FieldUtils.getField(TYPE.getPacketClass(), names[i], true);",
+			"",
+			"        if (fields[i] == null)",
+			"            throw new FieldAccessException(\"Cannot find field \" + names[i] + \".\");",
+			"    }",
+			"    return fields;",
+			"}" + NEWLN
+	);
+
+	private void writeBuilder(IndentBuilder indent, WrapperContext context, String className) throws IOException {
+		IndentBuilder body = indent.incrementIndent();
+		IndentBuilder statements = body.incrementIndent();
+		Map<CodeField, String> accessorNames = new HashMap<>();
+
+		for (String name : context.accessors.keySet()) {
+			accessorNames.put(context.accessorFields.get(name), name);
+		}
+
+		// Every field that writeDefaults() would fill in, unless it is set through the builder
+		List<String> defaulted = new ArrayList<>();
+
+		for (CodeField field : context.codeInfo.getMemoryOrder()) {
+			if (!isPrimitive(field))
+				defaulted.add("\"" + field.getName() + "\"");
+		}
+
+		indent.appendLine("// Used by the builder, which writes every field itself");
+		indent.appendLine("private " + className + "(Builder builder) {");
+		body.appendLine("super(new PacketContainer(TYPE), TYPE);");
+		indent.appendLine("}" + NEWLN);
+
+		indent.appendLine("/**");
+		indent.appendLine(" * Construct a builder of this packet, which writes each field exactly once.");
+		indent.appendLine(" * @return A new builder.");
+		indent.appendLine(" */");
+		indent.appendLine("public static Builder builder() {");
+		body.appendLine("return new Builder();");
+		indent.appendLine("}" + NEWLN);
+
+		indent.appendLine("/**");
+		indent.appendLine(" * Builds this packet by writing each of its fields exactly once, without the defaults pass of the constructor.");
+		indent.appendLine(" * <p>");
+		indent.appendLine(" * Fields that are not given, and fields without accessors, get the same default values as with the constructor.");
+		indent.appendLine(" */");
+		indent.appendLine("public static final class Builder {");
+
+		if (!defaulted.isEmpty()) {
+			body.appendLine("// Fields without a value until one is written, in memory order - resolved when the first packet is built");
+			body.appendLine("private static final Field[] DEFAULTED_FIELDS = findFields(" + Joiner.on(", ").join(defaulted) + ");");
+			body.appendLine("");
+			Collections.addAll(context.imports, "java.lang.reflect.Field", "com.comphenix.protocol.reflect.FieldAccessException", 
+					"com.comphenix.protocol.reflect.FieldUtils", "com.comphenix.protocol.reflect.instances.DefaultInstances");
+		}
+		for (Map.Entry<String, String> entry : context.accessors.entrySet()) {
+			body.appendLine("private " + entry.getValue() + " " + getVariableName(entry.getKey()) + ";");
+			body.appendLine("private boolean has" + entry.getKey() + ";");
+		}
+		body.appendLine("");
+
+		for (Map.Entry<String, String> entry : context.accessors.entrySet()) {
+			String variable = getVariableName(entry.getKey());
+
+			body.appendLine("public Builder " + variable + "(" + entry.getValue() + " value) {");
+			statements.appendLine("this." + variable + " = value;");
+			statements.appendLine("this.has" + entry.getKey() + " = true;");
+			statements.appendLine("return this;");
+			body.appendLine("}" + NEWLN);
+		}
+
+		body.appendLine("public " + className + " build() {");
+		statements.appendLine(className + " packet = new " + className + "(this);");
+		if (!defaulted.isEmpty()) {
+			statements.appendLine("Object target = packet.handle.getHandle();");
+		}
+		statements.appendLine("");
+
+		// Primitive fields are already zero, which is also their default value
+		int defaultIndex = 0;
+
+		for (CodeField field : context.codeInfo.getMemoryOrder()) {
+			String name = accessorNames.remove(field);
+
+			if (name != null) {
+				statements.appendLine("if (has" + name + ")");
+				statements.incrementIndent().appendLine("packet.set" + name + "(" + getVariableName(name) + ");");
+
+				if (!isPrimitive(field)) {
+					statements.appendLine("else");
+					statements.incrementIndent().appendLine("writeDefault(target, " + defaultIndex++ + ");");
+				}
+			} else if (!isPrimitive(field)) {
+				statements.appendLine("writeDefault(target, " + defaultIndex++ + ");");
+			}
+		}
+
+		// Accessors of fields that are not in memory order cannot be given a default value
+		for (String name : accessorNames.values()) {
+			statements.appendLine("if (has" + name + ")");
+			statements.incrementIndent().appendLine("packet.set" + name + "(" + getVariableName(name) + ");");
+		}
+		statements.appendLine("return packet;");
+		body.appendLine("}" + NEWLN);
+
+		if (!defaulted.isEmpty()) {
+			for (String line : BUILDER_DEFAULT_LINES) {
+				body.appendLine(line);
+			}
+		}
+		indent.appendLine("}" + NEWLN);
+	}
+
+	private static boolean isPrimitive(CodeField field) {
+		return field.getDescriptor().length() == 1;
+	}
+
+	private static final List<String> BROADCAST_LINES = Arrays.asList(
+			"/**",
+			" * Send this packet to every given player, encoding it only once.",
+			" * <p>",
+			" * Packet listeners are not informed, as the encoded packet is sent to each player as is.",
+			" * @param players - the receivers.",
+			" */",
+			"public void broadcast(Collection<? extends Player> players) {",
+			"    PacketBroadcast.broadcast(handle, players);",
+			"}" + NEWLN
+	);
+
+	private static final List<String> FROZEN_BROADCAST_LINES = Arrays.asList(
+			"/**",
+			" * Send this packet to every given player, encoding it only once.",
+			" * <p>",
+			" * Packet listeners are not informed, as the encoded packet is sent to each player as is.",
+			" * @param players - the receivers.",
+			" */",
+			"public void broadcast(Collection<? extends Player> players) {",
+			"    WirePacket encoded = frozen;",
+			"",
+			"    if (encoded != null)",
+			"        PacketBroadcast.send(players, encoded);",
+			"    else",
+			"        PacketBroadcast.broadcast(handle, players);",
+			"}" + NEWLN
+	);
+
+	private static final List<String> FREEZE_LINES = Arrays.asList(
+			"// Never modified once encoded, so it may still be sent by another thread after this wrapper has been thawed",
+			"private volatile WirePacket frozen;",
+			"",
+			"/**",
+			" * Encode this packet now, and send the encoded packet from then on until a field is set through this wrapper.",
+			" * <p>",
+			" * Packet listeners are not informed of the encoded packets, and changes made to the handle directly are not seen.",
+			" * Received packets are handed to the server as objects, so {@link #receivePacket(Player)} always uses the packet.",
+			" * @return This wrapper.",
+			" */",
+			"public %s freeze() {",
+			"    if (frozen == null)",
+			"        frozen = PacketBroadcast.encode(handle);",
+			"    return this;",
+			"}" + NEWLN,
+
+			"/**",
+			" * Determine if the encoded packet is sent instead of the packet.",
+			" * @return TRUE if it is, FALSE otherwise.",
+			" */",
+			"public boolean isFrozen() {",
+			"    return frozen != null;",
+			"}" + NEWLN,
+
+			"@Override",
+			"public void sendPacket(Player receiver) {",
+			"    WirePacket encoded = frozen;",
+			"",
+			"    if (encoded != null)",
+			"        PacketBroadcast.send(receiver, encoded);",
+			"    else",
+			"        super.sendPacket(receiver);",
+			"}" + NEWLN,
+
+			"@Override",
+			"public void broadcastPacket() {",
+			"    WirePacket encoded = frozen;",
+			"",
+			"    if (encoded != null)",
+			"        PacketBroadcast.send(Bukkit.getOnlinePlayers(), encoded);",
+			"    else",
+			"        super.broadcastPacket();",
+			"}" + NEWLN,
+
+			"private void thaw() {",
+			"    frozen = null;",
+			"}" + NEWLN
+	);
+
+	private void writeBroadcast(IndentBuilder indent) throws IOException {
+		List<String> lines = features.contains(Feature.FREEZING) ? FROZEN_BROADCAST_LINES : BROADCAST_LINES;
+
+		for (String line : lines) {
+			indent.appendLine(line);
+		}
+	}
+
+	private void writeFreeze(IndentBuilder indent, String className) throws IOException {
+		for (String line : FREEZE_LINES) {
+			indent.appendLine(String.format(line, className));
+		}
+	}
+
+	private void writeRebind(IndentBuilder indent, WrapperContext context, String className) throws IOException {
+		IndentBuilder body = indent.incrementIndent();
+
+		indent.appendLine("private static final ThreadLocal<" + className + "> FLYWEIGHT = ThreadLocal.withInitial(() -> new " + className + "(new PacketContainer(TYPE)));");
+		indent.appendLine("");
+
+		indent.appendLine("/**");
+		indent.appendLine(" * Wrap a packet with the wrapper of the current thread, instead of creating a new wrapper.");
+		indent.appendLine(" * <p>");
+		indent.appendLine(" * The wrapper is only valid until the next call to this method on the same thread.");
+		indent.appendLine(" * @param packet - the packet to wrap.");
+		indent.appendLine(" * @return The wrapper of the current thread.");
+		indent.appendLine(" */");
+		indent.appendLine("public static " + className + " wrap(PacketContainer packet) {");
+		body.appendLine("return FLYWEIGHT.get().rebind(packet);");
+		indent.appendLine("}" + NEWLN);
+
+		indent.appendLine("/**");
+		indent.appendLine(" * Point this wrapper at a different packet of the same type.");
+		indent.appendLine(" * @param packet - the packet to wrap.");
+		indent.appendLine(" * @return This wrapper.");
+		indent.appendLine(" */");
+		indent.appendLine("public " + className + " rebind(PacketContainer packet) {");
+		body.appendLine("if (packet == null)");
+		body.incrementIndent().appendLine("throw new IllegalArgumentException(\"Packet handle cannot be NULL.\");");
+		body.appendLine("if (packet.getType() != TYPE)");
+		body.incrementIndent().appendLine("throw new IllegalArgumentException(packet.getHandle() + \" is not a packet of type \" + TYPE);");
+		body.appendLine("handle = packet;");
+		if (features.contains(Feature.FREEZING)) {
+			body.appendLine("thaw();");
+		}
+
+		// Every modifier belongs to the previous packet
+		for (Modifiers modifier : context.cachedModifiers) {
+			body.appendLine(getCachedModifierName(modifier) + " = null;");
+		}
+		body.appendLine("return this;");
+		indent.appendLine("}" + NEWLN);
+	}
+
+	private void writeWireClasses(IndentBuilder indent, WrapperContext context, WikiPacketInfo wikiInfo) throws IOException {
+		List<CodeField> networkOrder = context.codeInfo.getNetworkOrder();
+		List<WikiPacketField> wikiFields = Lists.newArrayList(wikiInfo.getPacketFields());
+		List<WireFormat> formats = new ArrayList<>();
+		List<String> variables = new ArrayList<>();
+
+		// Codecs and views would read the fields back in a different layout from the one they were written in
+		if (!context.codeInfo.isStraightLine()) {
+			indent.appendLine("// Cannot read from buffers: fields are not written one at a time" + NEWLN);
+			return;
+		}
+
+		for (int i = 0; i < networkOrder.size(); i++) {
+			WireFormat format = WireFormat.of(context.codeInfo.getWireType(i));
+
+			// Every byte of the packet must be accounted for
+			if (format == null) {
+				indent.appendLine("// Cannot read from buffers: unknown encoding of " + networkOrder.get(i).getName() + NEWLN);
+				return;
+			}
+			formats.add(format);
+			variables.add(getCodecVariable(i, networkOrder, wikiFields, variables));
+		}
+
+		if (features.contains(Feature.CODECS)) {
+			writeCodec(indent, formats, variables);
+		}
+		if (features.contains(Feature.VIEWS) && !formats.isEmpty()) {
+			writeView(indent, formats, variables);
+		}
+	}
+
+	private void writeCodec(IndentBuilder indent, List<WireFormat> formats, List<String> variables) throws IOException {
+		IndentBuilder body = indent.incrementIndent();
+
+		indent.appendLine("/**");
+		indent.appendLine(" * The fields of this packet as they are sent over the network, read and written without the Minecraft packet.");
+		indent.appendLine(" * <p>");
+		indent.appendLine(" * Enums are given by their ordinal, and block positions packed into a long.");
+		indent.appendLine(" */");
+		indent.appendLine("public static final class Codec {");
+		for (int i = 0; i < formats.size(); i++) {
+			body.appendLine("public " + formats.get(i).type + " " + variables.get(i) + ";");
+		}
+		body.appendLine("");
+
+		body.appendLine("/**");
+		body.appendLine(" * Read the fields of this packet from a buffer, positioned after the packet ID.");
+		body.appendLine(" * @param buffer - the buffer.");
+		body.appendLine(" * @return The fields.");
+		body.appendLine(" */");
+		body.appendLine("public static Codec decode(ByteBuf buffer) {");
+		body.incrementIndent().appendLine("Codec codec = new Codec();");
+		for (int i = 0; i < formats.size(); i++) {
+			body.incrementIndent().appendLine("codec." + variables.get(i) + " = " + formats.get(i).read + ";");
+		}
+		body.incrementIndent().appendLine("return codec;");
+		body.appendLine("}" + NEWLN);
+
+		body.appendLine("/**");
+		body.appendLine(" * Write the fields of this packet to a buffer, after the packet ID.");
+		body.appendLine(" * @param buffer - the buffer.");
+		body.appendLine(" */");
+		body.appendLine("public void encode(ByteBuf buffer) {");
+		for (int i = 0; i < formats.size(); i++) {
+			body.incrementIndent().appendLine(String.format(formats.get(i).write, variables.get(i)) + ";");
+		}
+		body.appendLine("}" + NEWLN);
+		indent.appendLine("}" + NEWLN);
+	}
+
+	private void writeView(IndentBuilder indent, List<WireFormat> formats, List<String> variables) throws IOException {
+		IndentBuilder body = indent.incrementIndent();
+		IndentBuilder statements = body.incrementIndent();
+
+		indent.appendLine("/**");
+		indent.appendLine(" * A read-only view of this packet in a buffer, which only decodes the fields that are accessed.");
+		indent.appendLine(" * <p>");
+		indent.appendLine(" * The position of each field is remembered once it has been skipped over, and a view may be reused with {@link #reset(ByteBuf)}.");
+		indent.appendLine(" */");
+		indent.appendLine("public static final class View {");
+		body.appendLine("private final int[] offsets = new int[" + formats.size() + "];");
+		body.appendLine("private ByteBuf buffer;");
+		body.appendLine("");
+		body.appendLine("// Number of fields with a known offset");
+		body.appendLine("private int known;");
+		body.appendLine("");
+
+		body.appendLine("/**");
+		body.appendLine(" * Construct a view of the packet in a buffer, positioned after the packet ID.");
+		body.appendLine(" * @param buffer - the buffer, whose reader index is left as is.");
+		body.appendLine(" */");
+		body.appendLine("public View(ByteBuf buffer) {");
+		statements.appendLine("reset(buffer);");
+		body.appendLine("}" + NEWLN);
+
+		body.appendLine("/**");
+		body.appendLine(" * View a different packet in a buffer, positioned after the packet ID.");
+		body.appendLine(" * @param buffer - the buffer, whose reader index is left as is.");
+		body.appendLine(" * @return This view.");
+		body.appendLine(" */");
+		body.appendLine("public View reset(ByteBuf buffer) {");
+		statements.appendLine("this.buffer = buffer.duplicate();");
+		statements.appendLine("this.offsets[0] = buffer.readerIndex();");
+		statements.appendLine("this.known = 0;");
+		statements.appendLine("return this;");
+		body.appendLine("}" + NEWLN);
+
+		for (int i = 0; i < formats.size(); i++) {
+			String variable = variables.get(i);
+
+			body.appendLine("public " + formats.get(i).type + " get" + CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, variable) + "() {");
+			statements.appendLine("ByteBuf buffer = seek(" + i + ");");
+			statements.appendLine("return " + formats.get(i).read + ";");
+			body.appendLine("}" + NEWLN);
+		}
+
+		// Skip every field before the one we want, remembering where each of them ends
+		body.appendLine("private ByteBuf seek(int field) {");
+		statements.appendLine("for (; known < field; known++) {");
+		statements.incrementIndent().appendLine("buffer.readerIndex(offsets[known]);");
+		statements.incrementIndent().appendLine("skip(known);");
+		statements.incrementIndent().appendLine("offsets[known + 1] = buffer.readerIndex();");
+		statements.appendLine("}");
+		statements.appendLine("return buffer.readerIndex(offsets[field]);");
+		body.appendLine("}" + NEWLN);
+
+		body.appendLine("private void skip(int field) {");
+		statements.appendLine("switch (field) {");
+		for (int i = 0; i < formats.size() - 1; i++) {
+			statements.incrementIndent().appendLine("case " + i + ": " + formats.get(i).skip + "; break;");
+		}
+		statements.appendLine("}");
+		body.appendLine("}" + NEWLN);
+		indent.appendLine("}" + NEWLN);
+	}
+
+	private boolean usesPacketBroadcast() {
+		return features.contains(Feature.BROADCAST) || features.contains(Feature.FREEZING);
+	}
+
+	private boolean usesWireFormats() {
+		return features.contains(Feature.CODECS) || features.contains(Feature.VIEWS);
+	}
+
+	/**
+	 * Retrieve the name of a field in the network order, using the wiki where it is known.
+	 * @param fieldIndex - the index of the field in the network order.
+	 * @param networkOrder - the network order.
+	 * @param wikiFields - the fields of the packet on the wiki.
+	 * @param previous - names given to the previous fields.
+	 * @return A unique name.
+	 */
+	private static String getCodecVariable(int fieldIndex, List<CodeField> networkOrder, List<WikiPacketField> wikiFields, List<String> previous) {
+		String name = fieldIndex < wikiFields.size() ? getVariableName(getFieldName(wikiFields.get(fieldIndex))) : networkOrder.get(fieldIndex).getName();
+
+		// The same field may be written more than once
+		return previous.contains(name) ? name + fieldIndex : name;
+	}
+
+	private static String getVariableName(String accessorName) {
+		String name = CaseFormat.UPPER_CAMEL.to(CaseFormat.LOWER_CAMEL, accessorName);
+		return SourceVersion.isKeyword(name) ? name + "Value" : name;
+	}
+
+	private Set<String> getImports(WrapperContext context) {
+		Set<String> imports = new HashSet<>(context.imports);
+		imports.add("com.comphenix.protocol.PacketType");
+		imports.add("com.comphenix.protocol.events.PacketContainer");
+
+		// Only wrappers with at least one field that can be accessed directly
+		if (!context.directHandles.isEmpty()) {
+			Collections.addAll(imports, "java.lang.invoke.MethodHandle", "java.lang.invoke.MethodHandles", "java.lang.invoke.MethodType",
+					"java.lang.reflect.Field", "com.comphenix.protocol.reflect.FieldAccessException", "com.comphenix.protocol.reflect.FieldUtils");
+		}
+		if (usesWireFormats()) {
+			imports.add("io.netty.buffer.ByteBuf");
+		}
+		if (features.contains(Feature.BROADCAST)) {
+			Collections.addAll(imports, "java.util.Collection", "org.bukkit.entity.Player");
+		}
+		if (features.contains(Feature.FREEZING)) {
+			Collections.addAll(imports, "com.comphenix.protocol.injector.netty.WirePacket", "org.bukkit.Bukkit", "org.bukkit.entity.Player");
+		}
+		return imports;
+	}
+
+	/**
+	 * Write import declarations, grouped by their top-level package with the Java packages first.
+	 * @param imports - the imported classes.
+	 * @param builder - the output.
+	 * @throws IOException If the output cannot be written.
+	 */
+	private static void writeImports(Set<String> imports, Appendable builder) throws IOException {
+		List<String> sorted = new ArrayList<>(imports);
+		String previousGroup = null;
+
+		sorted.sort(Comparator.comparing(WrapperGenerator::getImportGroup).thenComparing(Comparator.naturalOrder()));
+
+		for (String name : sorted) {
+			String group = getImportGroup(name);
+
+			if (previousGroup != null && !group.equals(previousGroup))
+				builder.append(NEWLN);
+			builder.append("import ").append(name).append(";").append(NEWLN);
+			previousGroup = group;
+		}
+		builder.append(NEWLN);
+	}
+
+	/**
+	 * Import every class a type given in the generated code refers to.
+	 * @param type - the type, which may be generic or an array.
+	 * @param context - the current wrapper.
+	 */
+	private static void addImports(String type, WrapperContext context) {
+		for (String name : type.split("\\W+")) {
+			String imported = IMPORTS.get(name);
+
+			if (imported != null)
+				context.imports.add(imported);
+		}
+	}
+
+	private static String getImportGroup(String name) {
+		String group = name.substring(0, name.indexOf('.'));
+
+		switch (group) {
+			case "java": return "0" + group;
+			case "javax": return "1" + group;
+			default: return "2" + group;
+		}
+	}
+
+	private void writeCachedModifiers(IndentBuilder indent, WrapperContext context) throws IOException {
+		for (Modifiers modifier : context.cachedModifiers) {
+			String name = getCachedModifierName(modifier);
+			String type = "StructureModifier<" + getModifierType(modifier) + ">";
+
+			addImports(type, context);
+
+			indent.appendLine("private " + type + " " + name + ";" + NEWLN);
+			indent.appendLine("private " + type + " " + name + "() {");
+			indent.incrementIndent().appendLine("if (" + name + " == null)");
+			indent.incrementIndent().incrementIndent().appendLine(name + " = handle." + modifier.getMethodName() + ";");
+			indent.incrementIndent().appendLine("return " + name + ";");
+			indent.appendLine("}" + NEWLN);
+		}
+	}
+
+	private static final List<String> DIRECT_HANDLE_LINES = Arrays.asList(
+			"private static MethodHandle getter(String name, Class<?> type) {",
+			"    try {",
+			"        return MethodHandles.lookup().unreflectGetter(findField(name)).asType(MethodType.methodType(type, Object.class));",
+			"    } catch (IllegalAccessException e) {",
+			"        throw new FieldAccessException(\"Cannot access field \" + name + \".\", e);",
+			"    }",
+			"}" + NEWLN,
+
+			"private static MethodHandle setter(String name, Class<?> type) {",
+			"    try {",
+			"        return MethodHandles.lookup().unreflectSetter(findField(name)).asType(MethodType.methodType(void.class, Object.class, type));",
+			"    } catch (IllegalAccessException e) {",
+			"        throw new FieldAccessException(\"Cannot access field \" + name + \".\", e);",
+			"    }",
+			"}" + NEWLN,
+
+			"private static Field findField(String name) {",
+			"    Field field = FieldUtils.getField(TYPE.getPacketClass(), name, true);",
+			"",
+			"    if (field == null)",
+			"        throw new FieldAccessException(\"Cannot find field \" + name + \".\");",
+			"    return field;",
+			"}" + NEWLN
+	);
+
+	private void writeDirectHandles(IndentBuilder indent, WrapperContext context) throws IOException {
+		if (context.directHandles.isEmpty())
+			return;
+
+		// The handles are declared after TYPE, so they are initialized after it
+		for (Map.Entry<String, String> entry : context.directHandles.entrySet()) {
+			indent.appendLine("private static final MethodHandle " + entry.getKey() + " = " + entry.getValue() + ";");
+		}
+		indent.appendLine("");
+
+		for (String line : DIRECT_HANDLE_LINES) {
+			indent.appendLine(line);
+		}
+	}
+
+	/**
+	 * Retrieve the field behind the given accessor, if it can be accessed through a method handle.
+	 * @param fieldIndex - the index of the field in the network order.
+	 * @param modifier - the modifier of the field.
+	 * @param context - the current wrapper.
+	 * @param setter - TRUE if the field will be written, FALSE otherwise.
+	 * @return The field, or NULL if the modifier must be used instead.
+	 */
+	private CodeField getDirectField(int fieldIndex, Modifiers modifier, WrapperContext context, boolean setter) {
+		CodeField field = context.codeInfo.getNetworkOrder().get(fieldIndex);
+
+		if (!features.contains(Feature.DIRECT_ACCESSORS) || !isDirect(field, modifier, setter))
+			return null;
+		return field;
+	}
+
+	/**
+	 * Determine if a field can be accessed through a method handle typed by the output type of its modifier.
+	 * @param field - the field.
+	 * @param modifier - the modifier of the field.
+	 * @param setter - TRUE if the field will be written, FALSE otherwise.
+	 * @return TRUE if it can, FALSE if the modifier must be used instead.
+	 */
+	static boolean isDirect(CodeField field, Modifiers modifier, boolean setter) {
+		if (!modifier.isIdentity())
+			return false;
+		// The handle is typed by the field, so it must be exactly the input type of the modifier
+		return field.getTypeName().equals(modifier.getInputTypeName()) && !(setter && field.isFinal());
+	}
+
+	/**
+	 * Declare the method handle of a field, typed by the output type of its modifier so it can be invoked exactly.
+	 * @param field - the field.
+	 * @param name - the name of the accessor.
+	 * @param modifier - the modifier of the field.
+	 * @param context - the current wrapper.
+	 * @param setter - TRUE if the handle writes the field, FALSE otherwise.
+	 * @return The name of the constant that holds the handle.
+	 */
+	private String getDirectHandle(CodeField field, String name, Modifiers modifier, WrapperContext context, boolean setter) {
+		String constant = CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, name) + (setter ? "_SETTER" : "_GETTER");
+		String arguments = "\"" + field.getName() + "\", " + modifier.getOutputType() + ".class";
+
+		context.directHandles.put(constant, (setter ? "setter(" : "getter(") + arguments + ")");
+		return constant;
+	}
+
+	private String getCachedModifierName(Modifiers modifier) {
+		return CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, modifier.name());
+	}
+
+	/**
+	 * Retrieve the type parameter of the structure modifier returned by a modifier method.
+	 * @param modifier - the modifier.
+	 * @return The type parameter.
+	 */
+	private String getModifierType(Modifiers modifier) {
+		String method = modifier.getMethodName();
+
+		if (method.startsWith("getSpecificModifier(")) {
+			return method.substring(method.indexOf('(') + 1, method.indexOf(".class"));
+		}
+		return getBoxedType(modifier.getOutputType());
+	}
+
+	private static String getBoxedType(String type) {
+		switch (type) {
+			case "boolean": return "Boolean";
+			case "byte": return "Byte";
+			case "short": return "Short";
+			case "int": return "Integer";
+			case "long": return "Long";
+			case "float": return "Float";
+			case "double": return "Double";
+			default: return type;
+		}
+	}
+
+	static String getFieldName(WikiPacketField field) {
 		String converted = CaseFormating.toCamelCase(field.getFieldName());
 		return converted.replace("Eid", "EntityID")
 				.replace("EntityId", "EntityID")
@@ -283,6 +1362,34 @@ public class WrapperGenerator {
 		}
 	}
 
+	/**
+	 * Retrieve the type of the getter and setter of a field, which is the type given by the wiki if the output of the modifier can be cast to it.
+	 * @param field - the field on the wiki.
+	 * @param modifier - the modifier of the field.
+	 * @return The type of the accessors.
+	 */
+	private String getAccessorType(WikiPacketField field, Modifiers modifier) {
+		String type = getFieldType(field);
+
+		if (modifier.isWrapper() || !isCastable(modifier.getOutputType(), type))
+			return modifier.getOutputType();
+		return type;
+	}
+
+	/**
+	 * Determine if the boxed output of a modifier can be cast to the given type, which only unboxes and widens primitives.
+	 * @param outputType - the output type of the modifier.
+	 * @param type - the type to cast to.
+	 * @return TRUE if it can, FALSE otherwise.
+	 */
+	private static boolean isCastable(String outputType, String type) {
+		int outputRank = NUMERIC_TYPES.indexOf(outputType);
+
+		if (outputType.equals(type))
+			return true;
+		return outputRank >= 0 && NUMERIC_TYPES.indexOf(type) > outputRank;
+	}
+
 	private String getLongestWord(String[] input, Set<String> blacklist) {
 		int selected = 0;
 
@@ -295,51 +1402,52 @@ public class WrapperGenerator {
 		return input[selected];
 	}
 
-	private String getModifierCall(int fieldIndex, String callFormat, CodePacketInfo codeInfo) {
-		Field field = codeInfo.getNetworkOrder().get(fieldIndex);
+	private String getModifierCall(int fieldIndex, String callFormat, WrapperContext context) {
+		CodeField field = context.codeInfo.getNetworkOrder().get(fieldIndex);
+		int memoryIndex = getMemoryIndex(context.codeInfo, fieldIndex);
+
+		// The modifier we will use
+		Modifiers modifier = Modifiers.getByInputType(inputLookup, context.codeInfo.getTypeHierarchy(field));
+		String method = modifier != null ? "handle." + modifier.getMethodName() : "handle.UNKNOWN()";
+
+		if (modifier != null && features.contains(Feature.CACHED_MODIFIERS)) {
+			context.cachedModifiers.add(modifier);
+			method = getCachedModifierName(modifier) + "()";
+		}
+		return method + String.format(callFormat, memoryIndex);
+	}
+
+	/**
+	 * Retrieve the index of a field among the fields of the same type, which is the index used by its structure modifier.
+	 * @param codeInfo - the packet.
+	 * @param fieldIndex - the index of the field in the network order.
+	 * @return The index of the field in its modifier.
+	 */
+	static int getMemoryIndex(CodePacketInfo codeInfo, int fieldIndex) {
+		CodeField field = codeInfo.getNetworkOrder().get(fieldIndex);
 		int memoryIndex = 0;
 
 		// Find the correct index
-		for (Field compare : codeInfo.getMemoryOrder()) {
-			if (compare.getType().equals(field.getType())) {
+		for (CodeField compare : codeInfo.getMemoryOrder()) {
+			if (compare.getDescriptor().equals(field.getDescriptor())) {
 				if (field.equals(compare))
 					break;
 				else
 					memoryIndex++;
 			}
 		}
-
-		// The modifier we will use
-		Modifiers modifier = Modifiers.getByInputType(field.getType());
-		String method = modifier != null ? modifier.getMethodName() : "UNKNOWN()";
-
-		return method + String.format(callFormat, memoryIndex);
+		return memoryIndex;
 	}
 
 	private String getReference(PacketType type) {
 		return "PacketType." + Wrappit.getCamelCase(type.getProtocol()) + "." + Wrappit.getCamelCase(type.getSender()) + "." + type.name();
 	}
 
-	private void writeGetMethod(IndentBuilder indent, int fieldIndex, Modifiers modifier, CodePacketInfo codeInfo, WikiPacketField field)
+	private void writeGetMethod(IndentBuilder indent, int fieldIndex, Modifiers modifier, WrapperContext context, WikiPacketField field)
 			throws IOException {
 		String name = getFieldName(field);
-		String outputType = getFieldType(field);
-		String casting = "";
-
-		// Simple attempt at casting
-		if (modifier.isWrapper()) {
-			outputType = modifier.getOutputType();
-		} else if (!modifier.getOutputType().equals(outputType)) {
-			casting = " (" + outputType + ")";
-		}
-
-		// Pattern I noticed fixing wrappers
-		if ((modifier.getOutputType().equalsIgnoreCase("int") || modifier.getOutputType().equalsIgnoreCase("float"))
-				&& (outputType.equalsIgnoreCase("byte") || outputType.equalsIgnoreCase("short"))) {
-			outputType = modifier.getOutputType();
-			casting = "";
-		}
-
+		String outputType = getAccessorType(field, modifier);
+		String casting = outputType.equals(modifier.getOutputType()) ? "" : " (" + outputType + ")";
 		String note = CaseFormating.toLowerCaseRange(field.getNotes(), 0, 1).trim();
 
 		// Comment
@@ -353,12 +1461,29 @@ public class WrapperGenerator {
 		indent.appendLine(" */");
 
 		indent.appendLine("public " + outputType + " get" + name + "() {");
-		indent.incrementIndent().appendLine("return" + casting + " handle." + getModifierCall(fieldIndex, ".read(%s);", codeInfo));
+		CodeField directField = getDirectField(fieldIndex, modifier, context, false);
+
+		if (directField != null) {
+			String constant = getDirectHandle(directField, name, modifier, context, false);
+
+			indent.incrementIndent().appendLine("try {");
+			indent.incrementIndent().incrementIndent().appendLine("return" + casting + " (" + modifier.getOutputType() + ") " + constant + ".invokeExact(handle.getHandle());");
+			indent.incrementIndent().appendLine("} catch (Throwable e) {");
+			indent.incrementIndent().incrementIndent().appendLine("throw new FieldAccessException(\"Cannot read " + directField.getName() + ".\", e);");
+			indent.incrementIndent().appendLine("}");
+		} else {
+			indent.incrementIndent().appendLine("return" + casting + " " + getModifierCall(fieldIndex, ".read(%s);", context));
+		}
 		indent.appendLine("}" + NEWLN);
 
-		// Generate getEntity methods
-		if (name.toLowerCase().contains("entityid")) {
-			writeGetEntityMethods(indent, fieldIndex);
+		context.accessors.put(name, outputType);
+		context.accessorFields.put(name, context.codeInfo.getNetworkOrder().get(fieldIndex));
+		addImports(modifier.getOutputType(), context);
+
+		// Generate getEntity methods - the entity modifier can only read single int fields
+		if (name.toLowerCase().contains("entityid") && outputType.equals("int") && context.names.add("Entity(World)")) {
+			writeGetEntityMethods(indent, fieldIndex, name);
+			addImports("Entity World PacketEvent", context);
 		}
 	}
 
@@ -382,30 +1507,40 @@ public class WrapperGenerator {
 			"}" + NEWLN
 	);
 
-	private void writeGetEntityMethods(IndentBuilder indent, int fieldIndex) throws IOException {
-		for (String line : GET_ENTITY_LINES) {
-			indent.appendLine(String.format(line, fieldIndex));
+	private static final List<String> GET_INDEXED_ENTITY_LINES = Arrays.asList(
+			"/**",
+			" * Retrieve the entity involved in this event.",
+			" * @param world - the current world of the entity.",
+			" * @return The involved entity.",
+			" */",
+			"public Entity getEntity(World world) {",
+			"    Entity entity = EntityIndex.getEntity(world, get%2$s());",
+			"    return entity != null ? entity : handle.getEntityModifier(world).read(%1$s);",
+			"}" + NEWLN,
+
+			"/**",
+			" * Retrieve the entity involved in this event.",
+			" * @param event - the packet event.",
+			" * @return The involved entity.",
+			" */",
+			"public Entity getEntity(PacketEvent event) {",
+			"    return getEntity(event.getPlayer().getWorld());",
+			"}" + NEWLN
+	);
+
+	private void writeGetEntityMethods(IndentBuilder indent, int fieldIndex, String name) throws IOException {
+		List<String> lines = features.contains(Feature.ENTITY_INDEX) ? GET_INDEXED_ENTITY_LINES : GET_ENTITY_LINES;
+
+		for (String line : lines) {
+			indent.appendLine(String.format(line, fieldIndex, name));
 		}
 	}
 
-	private void writeSetMethod(IndentBuilder indent, int fieldIndex, Modifiers modifier, CodePacketInfo codeInfo, WikiPacketField field)
+	private void writeSetMethod(IndentBuilder indent, int fieldIndex, Modifiers modifier, WrapperContext context, WikiPacketField field)
 			throws IOException {
 		String name = getFieldName(field);
-		String inputType = getFieldType(field);
-		String casting = "";
-
-		if (modifier.isWrapper()) {
-			inputType = modifier.getOutputType();
-		} else if (!modifier.getOutputType().equals(inputType)) {
-			casting = " (" + modifier.getOutputType() + ")";
-		}
-
-		// Pattern I noticed fixing wrappers
-		if ((modifier.getOutputType().equalsIgnoreCase("int") || modifier.getOutputType().equalsIgnoreCase("float"))
-				&& (inputType.equalsIgnoreCase("byte") || inputType.equalsIgnoreCase("short"))) {
-			inputType = modifier.getOutputType();
-			casting = "";
-		}
+		String inputType = getAccessorType(field, modifier);
+		String casting = inputType.equals(modifier.getOutputType()) ? "" : " (" + modifier.getOutputType() + ")";
 
 		// String note = CaseFormating.toLowerCaseRange(field.getNotes(), 0, 1).trim();
 
@@ -416,7 +1551,22 @@ public class WrapperGenerator {
 		indent.appendLine(" */");
 
 		indent.appendLine("public void set" + name + "(" + inputType + " value) {");
-		indent.incrementIndent().appendLine("handle." + getModifierCall(fieldIndex, ".write(%s," + casting + " value);", codeInfo));
+		if (features.contains(Feature.FREEZING)) {
+			indent.incrementIndent().appendLine("thaw();");
+		}
+		CodeField directField = getDirectField(fieldIndex, modifier, context, true);
+
+		if (directField != null) {
+			String constant = getDirectHandle(directField, name, modifier, context, true);
+
+			indent.incrementIndent().appendLine("try {");
+			indent.incrementIndent().incrementIndent().appendLine(constant + ".invokeExact(handle.getHandle()," + casting + " value);");
+			indent.incrementIndent().appendLine("} catch (Throwable e) {");
+			indent.incrementIndent().incrementIndent().appendLine("throw new FieldAccessException(\"Cannot write " + directField.getName() + ".\", e);");
+			indent.incrementIndent().appendLine("}");
+		} else {
+			indent.incrementIndent().appendLine(getModifierCall(fieldIndex, ".write(%s," + casting + " value);", context));
+		}
 		indent.appendLine("}\n");
 	}
 }
@@ -23,25 +23,61 @@
 package com.comphenix.wrappit;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.comphenix.protocol.PacketType;
 import com.comphenix.protocol.utility.Constants;
 import com.comphenix.protocol.utility.MinecraftReflection;
 import com.comphenix.protocol.utility.MinecraftVersion;
-import com.comphenix.wrappit.io.IOUtil;
+import com.comphenix.wrappit.WrapperGenerator.Feature;
+import com.comphenix.wrappit.compiler.WrapperCompiler;
+import com.comphenix.wrappit.io.ArchiveSink;
+import com.comphenix.wrappit.io.DirectorySink;
+import com.comphenix.wrappit.io.GeneratorManifest;
+import com.comphenix.wrappit.io.MemorySink;
+import com.comphenix.wrappit.io.OutputSink;
 import com.comphenix.wrappit.minecraft.CodePacketReader;
 import com.comphenix.wrappit.test.WrapperTest;
 import com.comphenix.wrappit.wiki.WikiPacketReader;
+import com.comphenix.wrappit.wiki.WikiPacketReader.ParseMode;
 import com.google.common.base.CaseFormat;
+import com.google.common.hash.Hashing;
 
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 
 public class Wrappit {
+	// Folder of the generated classes inside archives
+	private static final String PACKAGE_FOLDER = "com/comphenix/packetwrapper/";
+
 	private static File wikiPage = null;
+	private static File wikiCache = null;
+	private static ParseMode wikiMode = ParseMode.DOCUMENT;
 	private static File packetWrapper = null;
+	private static File serverJar = null;
+	private static File codeCache = null;
+	private static File output = new File("Packets");
 	private static boolean test = false;
+	private static int threads = 1;
+	private static boolean incremental = false;
+	private static boolean compile = false;
+	private static boolean bytecode = false;
+	private static File support = null;
+	private static Set<Feature> features = EnumSet.noneOf(Feature.class);
 
 	public static void main(String[] args) {
 		generate(new String[] { "--wikiPage", "C:/Users/Dan/Documents/Development/utils/protocol.html" });
@@ -59,13 +95,88 @@ public class Wrappit {
 	private static void generate(String[] args) {
 		OptionParser parser = new OptionParser() {{
 			accepts("wikiPage").withRequiredArg().ofType(File.class);
+			accepts("wikiCache").withRequiredArg().ofType(File.class);
+			accepts("wikiMode").withRequiredArg();
 			accepts("packetWrapper").withOptionalArg().ofType(File.class);
+			accepts("serverJar").withRequiredArg().ofType(File.class);
+			accepts("codeCache").withRequiredArg().ofType(File.class);
 			accepts("flagOnly");
+			accepts("threads").withRequiredArg().ofType(Integer.class);
+			accepts("incremental");
+			accepts("output").withRequiredArg().ofType(File.class);
+			accepts("compile");
+			accepts("support").withRequiredArg().ofType(File.class);
+			accepts("test");
+			accepts("bytecode");
+			accepts("feature").withRequiredArg();
 		}};
 
 		OptionSet options = parser.parse(args);
 		wikiPage = (File) options.valueOf("wikiPage");
-		if (test = options.has("test")) {
+		wikiCache = (File) options.valueOf("wikiCache");
+		serverJar = (File) options.valueOf("serverJar");
+		codeCache = (File) options.valueOf("codeCache");
+		if (codeCache != null && serverJar == null) {
+			System.err.println("The code cache requires the server jar!");
+			System.exit(2);
+		}
+		if (options.has("wikiMode")) {
+			try {
+				wikiMode = ParseMode.valueOf(((String) options.valueOf("wikiMode")).toUpperCase());
+			} catch (IllegalArgumentException ex) {
+				System.err.println("Wiki mode must be one of " + Arrays.toString(ParseMode.values()) + "!");
+				System.exit(2);
+			}
+		}
+		incremental = options.has("incremental");
+		if (options.has("output")) {
+			output = (File) options.valueOf("output");
+		}
+		if (incremental && isArchive(output)) {
+			System.err.println("Incremental mode requires an output folder!");
+			System.exit(2);
+		}
+		if ((bytecode = options.has("bytecode")) && options.has("compile")) {
+			System.err.println("Bytecode wrappers do not need to be compiled!");
+			System.exit(2);
+		}
+		for (Object feature : options.valuesOf("feature")) {
+			try {
+				features.add(Feature.valueOf(feature.toString().toUpperCase().replace('-', '_')));
+			} catch (IllegalArgumentException ex) {
+				System.err.println("Feature must be one of " + Arrays.toString(Feature.values()) + "!");
+				System.exit(2);
+			}
+		}
+		if (bytecode && !BytecodeGenerator.SUPPORTED_FEATURES.containsAll(features)) {
+			System.err.println("Bytecode wrappers only support " + BytecodeGenerator.SUPPORTED_FEATURES + "!");
+			System.exit(2);
+		}
+		if (compile = options.has("compile")) {
+			support = (File) options.valueOf("support");
+			if (support != null && !support.isDirectory()) {
+				System.err.println("Support classes must be in a folder!");
+				System.exit(2);
+			}
+			if (! output.getName().endsWith(".jar")) {
+				System.err.println("Compiled wrappers must be saved to a jar file!");
+				System.exit(2);
+			}
+			if (incremental) {
+				System.err.println("Compiled wrappers cannot be generated incrementally!");
+				System.exit(2);
+			}
+		}
+		if (options.has("threads")) {
+			threads = (Integer) options.valueOf("threads");
+			if (threads < 1) {
+				System.err.println("Thread count must be at least 1!");
+				System.exit(2);
+			}
+		}
+
+		// Compiled wrappers are tested directly
+		if ((test = options.has("test")) && !compile) {
 			if (options.has("packets")) {
 				packetWrapper = (File) options.valueOf("packetWrapper");
 				if (! packetWrapper.getName().endsWith(".jar")) {
@@ -91,35 +202,191 @@ public class Wrappit {
 		MinecraftReflection.setMinecraftPackage(Constants.NMS, Constants.OBC);
 		MinecraftVersion.setCurrentVersion(Constants.CURRENT_VERSION);
 
-		CodePacketReader codeReader = new CodePacketReader();
-		// WikiPacketReader wikiReader = new WikiPacketReader(wikiPage);
-		WikiPacketReader wikiReader = new WikiPacketReader();
-		WrapperGenerator generator = new WrapperGenerator(codeReader, wikiReader);
+		CodePacketReader codeReader;
+		if (codeCache != null) {
+			codeReader = new CodePacketReader(serverJar, threads, codeCache);
+		} else {
+			codeReader = serverJar != null ? new CodePacketReader(serverJar, threads) : new CodePacketReader();
+		}
+		WikiPacketReader wikiReader;
+		if (wikiCache != null) {
+			wikiReader = wikiPage != null ? new WikiPacketReader(wikiPage, wikiCache, wikiMode, threads) : new WikiPacketReader(WikiPacketReader.STANDARD_URL, wikiCache, wikiMode, threads);
+		} else {
+			wikiReader = wikiPage != null ? new WikiPacketReader(wikiPage, wikiMode, threads) : new WikiPacketReader(WikiPacketReader.STANDARD_URL, wikiMode, threads);
+		}
+		ClassGenerator generator = bytecode ? new BytecodeGenerator(codeReader, wikiReader, features) : new WrapperGenerator(codeReader, wikiReader, features);
 
-		File folder = new File("Packets");
-		if (folder.exists())
-			folder.delete();
-		folder.mkdirs();
+		MemorySink sources = null;
+		GeneratorManifest manifest = null;
+		OutputSink sink;
 
-		System.out.println("Generating wrappers...");
-		System.out.println("Saving packets to " + folder.getAbsolutePath());
+		if (compile) {
+			sink = sources = new MemorySink();
+		} else if (isArchive(output)) {
+			sink = new ArchiveSink(output, PACKAGE_FOLDER);
+		} else {
+			if (output.exists() && !incremental)
+				deleteGeneratedFiles(output);
+			output.mkdirs();
+			sink = new DirectorySink(output);
 
-		for (PacketType type : PacketType.values()) {
-			try {
-				System.out.println("Generating wrapper for " + type.name());
-				String className = "Wrapper" + getCamelCase(type.getProtocol()) + getCamelCase(type.getSender()) + getCamelCase(type.name());
-				File file = new File(folder, className + ".java");
-				file.createNewFile();
-				IOUtil.writeLines(file, Arrays.asList(generator.generateClass(type)));
-			} catch (Throwable ex) {
-				System.err.println("Failed to generate wrapper for " + type.name());
-				ex.printStackTrace();
-			}
+			// Only folders can be updated incrementally
+			if (incremental)
+				manifest = new GeneratorManifest(output);
+		}
+
+		System.out.println("Generating wrappers using " + threads + " thread(s)...");
+		System.out.println("Saving packets to " + output.getAbsolutePath());
+
+		try (OutputSink packetSink = sink) {
+			generateWrappers(generator, packetSink, manifest);
 		}
 
+		// Failed wrappers are left out, so they are retried next time
+		if (manifest != null)
+			manifest.save();
+
+		if (compile)
+			compileWrappers(sources);
+
 		System.out.println("Done!");
 	}
 
+	private void generateWrappers(ClassGenerator generator, OutputSink sink, GeneratorManifest manifest) throws IOException, InterruptedException {
+		generateSupportClasses(generator, sink, manifest);
+
+		// Every packet is written to its own file, so the output does not depend on the order the workers finish in
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Map<PacketType, Future<?>> tasks = new LinkedHashMap<>();
+
+		try {
+			for (PacketType type : PacketType.values()) {
+				tasks.put(type, executor.submit(() -> {
+					generateWrapper(generator, sink, manifest, type);
+					return null;
+				}));
+			}
+
+			for (Map.Entry<PacketType, Future<?>> entry : tasks.entrySet()) {
+				try {
+					entry.getValue().get();
+				} catch (ExecutionException ex) {
+					System.err.println("Failed to generate wrapper for " + entry.getKey().name());
+					ex.getCause().printStackTrace();
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void generateSupportClasses(ClassGenerator generator, OutputSink sink, GeneratorManifest manifest) throws IOException {
+		if (manifest == null) {
+			generator.generateSupportClasses(sink);
+			return;
+		}
+
+		// Support classes are small, so they are generated in memory and recorded by the hash of their content
+		MemorySink generated = new MemorySink();
+		generator.generateSupportClasses(generated);
+
+		for (Map.Entry<String, byte[]> entry : generated.getFiles().entrySet()) {
+			String path = entry.getKey();
+			String inputs = Hashing.sha256().hashBytes(entry.getValue()).toString();
+
+			if (sink.exists(path) && manifest.isUnchanged(path, inputs)) {
+				System.out.println("Skipping unchanged support class " + path);
+			} else {
+				try (OutputStream stream = sink.openStream(path)) {
+					stream.write(entry.getValue());
+				}
+			}
+			manifest.record(path, inputs);
+		}
+	}
+
+	private void compileWrappers(MemorySink sources) throws IOException, ClassNotFoundException {
+		Map<String, byte[]> files = new TreeMap<>(sources.getFiles());
+
+		// Hand-written classes such as AbstractPacket, unless they have been regenerated
+		if (support != null) {
+			for (File file : support.listFiles()) {
+				if (file.getName().endsWith(".java") && !files.containsKey(file.getName()))
+					files.put(file.getName(), Files.readAllBytes(file.toPath()));
+			}
+		}
+
+		// The wrappers cannot be compiled without their super class
+		if (!files.containsKey("AbstractPacket.java")) {
+			MemorySink embedded = new MemorySink();
+
+			WrapperGenerator.generateAbstractPacket(embedded);
+			files.putAll(embedded.getFiles());
+		}
+
+		System.out.println("Compiling " + files.size() + " source files...");
+		Map<String, byte[]> classes = new WrapperCompiler().compile(files);
+
+		try (ArchiveSink jar = new ArchiveSink(output, "")) {
+			WrapperCompiler.writeClasses(classes, jar);
+		}
+		System.out.println("Saved " + classes.size() + " classes to " + output.getAbsolutePath());
+
+		if (test) {
+			ClassLoader loader = WrapperCompiler.createClassLoader(classes, getClass().getClassLoader());
+			List<Class<?>> loaded = new ArrayList<>();
+
+			for (String name : classes.keySet())
+				loaded.add(loader.loadClass(name));
+			WrapperTest.test(loaded);
+		}
+	}
+
+	private void generateWrapper(ClassGenerator generator, OutputSink sink, GeneratorManifest manifest, PacketType type) throws Exception {
+		String className = getClassName(type);
+		String inputs = manifest != null ? generator.getInputs(type) : null;
+
+		if (manifest != null && sink.exists(generator.getFileName(type)) && manifest.isUnchanged(className, inputs)) {
+			System.out.println("Skipping unchanged wrapper for " + type.name());
+		} else {
+			System.out.println("Generating wrapper for " + type.name());
+			generator.generateClass(type, sink);
+		}
+
+		if (manifest != null)
+			manifest.record(className, inputs);
+	}
+
+	/**
+	 * Delete the wrappers and manifest of a previous run, leaving any other file in the folder alone.
+	 * @param folder - the output folder.
+	 * @throws IOException If the folder cannot be listed or a file cannot be deleted.
+	 */
+	private static void deleteGeneratedFiles(File folder) throws IOException {
+		File[] files = folder.listFiles();
+
+		if (files == null)
+			throw new IOException(folder.getAbsolutePath() + " is not a folder.");
+
+		for (File file : files) {
+			String name = file.getName();
+
+			if (name.endsWith(".java") || name.endsWith(".class") || name.equals(GeneratorManifest.FILE_NAME)) {
+				if (!file.delete())
+					throw new IOException("Cannot delete " + file.getAbsolutePath());
+			}
+		}
+	}
+
+	private static boolean isArchive(File file) {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".jar") || name.endsWith(".zip");
+	}
+
+	public static String getClassName(PacketType type) {
+		return "Wrapper" + getCamelCase(type.getProtocol()) + getCamelCase(type.getSender()) + getCamelCase(type.name());
+	}
+
 	public static String getCamelCase(Enum<?> enumValue) {
 		return getCamelCase(enumValue.name());
 	}
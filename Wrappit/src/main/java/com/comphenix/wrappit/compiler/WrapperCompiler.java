@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import com.comphenix.wrappit.io.OutputSink;
+
+/**
+ * Compiles generated wrappers in memory, without writing any source or class file to disk.
+ */
+public class WrapperCompiler {
+	private final JavaCompiler compiler;
+	private final String classPath;
+	
+	/**
+	 * Construct a compiler that resolves dependencies from the class path of this JVM.
+	 */
+	public WrapperCompiler() {
+		this(System.getProperty("java.class.path"));
+	}
+	
+	/**
+	 * Construct a compiler that resolves dependencies from a given class path.
+	 * @param classPath - the class path, such as the location of ProtocolLib and the server.
+	 */
+	public WrapperCompiler(String classPath) {
+		this.compiler = ToolProvider.getSystemJavaCompiler();
+		this.classPath = classPath;
+		
+		if (compiler == null)
+			throw new IllegalStateException("No Java compiler available. Please run Wrappit using a JDK.");
+	}
+	
+	/**
+	 * Compile a set of source files.
+	 * @param sources - the content of every source file, indexed by its path.
+	 * @return The bytecode of every resulting class, indexed by its binary name.
+	 * @throws IOException If the sources could not be compiled.
+	 */
+	public Map<String, byte[]> compile(Map<String, byte[]> sources) throws IOException {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		List<JavaFileObject> units = new ArrayList<>();
+		
+		for (Map.Entry<String, byte[]> entry : sources.entrySet()) {
+			units.add(new SourceFile(entry.getKey(), entry.getValue()));
+		}
+		
+		StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+		
+		try (MemoryFileManager fileManager = new MemoryFileManager(standard)) {
+			List<String> options = Arrays.asList("-classpath", classPath, "-source", "1.8", "-target", "1.8", "-nowarn");
+			boolean success = compiler.getTask(null, fileManager, diagnostics, options, null, units).call();
+			
+			if (!success) {
+				int errors = 0;
+				
+				for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+					if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+						System.err.println(diagnostic);
+						errors++;
+					}
+				}
+				throw new IOException("Failed to compile wrappers: " + errors + " error(s).");
+			}
+			return fileManager.getClasses();
+		}
+	}
+	
+	/**
+	 * Write every compiled class to a sink, such as a jar.
+	 * @param classes - compiled classes, indexed by binary name.
+	 * @param sink - the sink to write to.
+	 * @throws IOException If the classes cannot be written.
+	 */
+	public static void writeClasses(Map<String, byte[]> classes, OutputSink sink) throws IOException {
+		for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			try (OutputStream output = sink.openStream(entry.getKey().replace('.', '/') + ".class")) {
+				output.write(entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Create a class loader that defines compiled classes on demand.
+	 * @param classes - compiled classes, indexed by binary name.
+	 * @param parent - the parent class loader.
+	 * @return The class loader.
+	 */
+	public static ClassLoader createClassLoader(final Map<String, byte[]> classes, ClassLoader parent) {
+		return new ClassLoader(parent) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				byte[] data = classes.get(name);
+				
+				if (data == null)
+					throw new ClassNotFoundException(name);
+				return defineClass(name, data, 0, data.length);
+			}
+		};
+	}
+	
+	/**
+	 * A source file stored in memory.
+	 */
+	private static class SourceFile extends SimpleJavaFileObject {
+		private final byte[] content;
+		
+		public SourceFile(String path, byte[] content) {
+			super(URI.create("string:///" + path), Kind.SOURCE);
+			this.content = content;
+		}
+		
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return new String(content, StandardCharsets.UTF_8);
+		}
+	}
+	
+	/**
+	 * Stores every generated class file in memory.
+	 */
+	private static class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+		private final Map<String, ByteArrayOutputStream> classes = new TreeMap<>();
+		
+		public MemoryFileManager(JavaFileManager fileManager) {
+			super(fileManager);
+		}
+		
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, final String className, Kind kind, FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind) {
+				@Override
+				public OutputStream openOutputStream() {
+					ByteArrayOutputStream output = new ByteArrayOutputStream();
+					classes.put(className, output);
+					return output;
+				}
+			};
+		}
+		
+		public Map<String, byte[]> getClasses() {
+			Map<String, byte[]> result = new TreeMap<>();
+			
+			for (Map.Entry<String, ByteArrayOutputStream> entry : classes.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().toByteArray());
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Writes every file into a single zip or jar archive.
+ * <p>
+ * Files are kept in memory until the sink is closed, and then written sorted by path with a fixed
+ * time, so the same files always produce the same archive no matter which thread wrote them first.
+ */
+public class ArchiveSink extends OutputSink
+{
+	// The earliest time a zip entry can hold, given in local time as that is how entries store it
+	private static final long ENTRY_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1).getTimeInMillis();
+
+	private final OutputStream output;
+	private final String prefix;
+
+	// Guarded by itself
+	private final Map<String, byte[]> entries = new TreeMap<>();
+
+	/**
+	 * Creates or replaces an archive file.
+	 *
+	 * @param file Archive file
+	 * @param prefix Folder every path is relative to inside the archive, such as <code>com/comphenix/packetwrapper/</code>
+	 * @throws IOException If the file cannot be created
+	 */
+	public ArchiveSink(File file, String prefix) throws IOException
+	{
+		this(new FileOutputStream(file), prefix);
+	}
+
+	public ArchiveSink(OutputStream output, String prefix)
+	{
+		Validate.notNull(output, "output cannot be null!");
+		Validate.notNull(prefix, "prefix cannot be null!");
+
+		this.output = output;
+		this.prefix = prefix;
+	}
+
+	@Override
+	public OutputStream openStream(final String path)
+	{
+		return new ByteArrayOutputStream()
+		{
+			@Override
+			public void close()
+			{
+				synchronized (entries)
+				{
+					entries.put(prefix + path, toByteArray());
+				}
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try (ZipOutputStream zip = new ZipOutputStream(output))
+		{
+			synchronized (entries)
+			{
+				for (Map.Entry<String, byte[]> entry : entries.entrySet())
+				{
+					ZipEntry zipEntry = new ZipEntry(entry.getKey());
+
+					zipEntry.setTime(ENTRY_TIME);
+					zip.putNextEntry(zipEntry);
+					zip.write(entry.getValue());
+					zip.closeEntry();
+				}
+			}
+		}
+	}
+}
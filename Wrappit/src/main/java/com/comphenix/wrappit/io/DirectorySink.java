@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Writes every file to a folder on disk.
+ */
+public class DirectorySink extends OutputSink
+{
+	private final File folder;
+
+	public DirectorySink(File folder)
+	{
+		Validate.notNull(folder, "folder cannot be null!");
+		this.folder = folder;
+	}
+
+	@Override
+	public OutputStream openStream(String path) throws IOException
+	{
+		File file = getFile(path);
+		File parent = file.getParentFile();
+
+		if (parent != null && !parent.exists())
+			parent.mkdirs();
+		return new FileOutputStream(file);
+	}
+
+	@Override
+	public boolean exists(String path)
+	{
+		return getFile(path).exists();
+	}
+
+	/**
+	 * Retrieves the file a given path is written to.
+	 *
+	 * @param path Relative path
+	 * @return The file
+	 */
+	public File getFile(String path)
+	{
+		return new File(folder, path);
+	}
+
+	public File getFolder()
+	{
+		return folder;
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Records the inputs each wrapper was generated from, so that wrappers with
+ * unchanged inputs can be skipped by the next run.
+ * <p>
+ * The manifest is a plain text file with one <code>class=inputs</code> line per wrapper,
+ * sorted by class name so that it diffs cleanly. Support classes are recorded by their
+ * file name instead.
+ */
+public class GeneratorManifest
+{
+	public static final String FILE_NAME = ".wrappit-manifest";
+
+	private final File file;
+	private final Map<String, String> previous = new HashMap<>();
+	private final Map<String, String> current = new ConcurrentHashMap<>();
+
+	/**
+	 * Load the manifest stored in the given output folder, if any.
+	 *
+	 * @param folder Output folder
+	 * @throws IOException If the manifest cannot be read
+	 */
+	public GeneratorManifest(File folder) throws IOException
+	{
+		Validate.notNull(folder, "folder cannot be null!");
+
+		this.file = new File(folder, FILE_NAME);
+
+		if (file.exists())
+		{
+			for (String line : IOUtil.readLines(file))
+			{
+				int index = line.indexOf('=');
+				if (index > 0)
+					previous.put(line.substring(0, index), line.substring(index + 1));
+			}
+		}
+	}
+
+	/**
+	 * Determines if a wrapper was last generated from the exact same inputs.
+	 *
+	 * @param className Wrapper class name
+	 * @param inputs Current inputs of the wrapper
+	 * @return True if the inputs are unchanged, false otherwise
+	 */
+	public boolean isUnchanged(String className, String inputs)
+	{
+		return inputs.equals(previous.get(className));
+	}
+
+	/**
+	 * Records the inputs of a wrapper that is up to date after this run. Safe to call from any thread.
+	 *
+	 * @param className Wrapper class name
+	 * @param inputs Inputs the wrapper was generated from
+	 */
+	public void record(String className, String inputs)
+	{
+		current.put(className, inputs);
+	}
+
+	/**
+	 * Saves every recorded wrapper, replacing the previous manifest.
+	 *
+	 * @throws IOException If writing fails
+	 */
+	public void save() throws IOException
+	{
+		List<String> lines = new ArrayList<>();
+
+		for (Map.Entry<String, String> entry : new TreeMap<>(current).entrySet())
+			lines.add(entry.getKey() + "=" + entry.getValue());
+
+		IOUtil.writeLines(file, lines);
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps every file in memory, mostly useful for tests and in-process compilation.
+ */
+public class MemorySink extends OutputSink
+{
+	private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+	@Override
+	public OutputStream openStream(final String path)
+	{
+		return new ByteArrayOutputStream()
+		{
+			@Override
+			public void close()
+			{
+				files.put(path, toByteArray());
+			}
+		};
+	}
+
+	@Override
+	public boolean exists(String path)
+	{
+		return files.containsKey(path);
+	}
+
+	/**
+	 * Retrieves the content of a file.
+	 *
+	 * @param path Relative path
+	 * @return The content, or null if the file has not been written
+	 */
+	public byte[] getBytes(String path)
+	{
+		return files.get(path);
+	}
+
+	/**
+	 * Retrieves the content of a text file.
+	 *
+	 * @param path Relative path
+	 * @return The content decoded as UTF-8, or null if the file has not been written
+	 */
+	public String getText(String path)
+	{
+		byte[] data = files.get(path);
+		return data != null ? new String(data, StandardCharsets.UTF_8) : null;
+	}
+
+	/**
+	 * Retrieves every written file, sorted by path.
+	 *
+	 * @return Read-only map of every path and its content
+	 */
+	public Map<String, byte[]> getFiles()
+	{
+		return Collections.unmodifiableMap(new TreeMap<>(files));
+	}
+}
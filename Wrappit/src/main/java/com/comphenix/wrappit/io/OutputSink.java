@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Destination of generated files.
+ * <p>
+ * Files are written as they are generated, so a sink never needs to hold
+ * the entire content of a file in memory unless it is meant to.
+ */
+public abstract class OutputSink implements Closeable
+{
+	/**
+	 * Opens a file for writing. The file is complete once the stream is closed.
+	 * <p>
+	 * Implementations must be safe to call from multiple threads.
+	 *
+	 * @param path Relative path of the file, using forward slashes
+	 * @return Stream to write the file content to
+	 * @throws IOException If the file cannot be opened
+	 */
+	public abstract OutputStream openStream(String path) throws IOException;
+
+	/**
+	 * Opens a text file for writing, encoded in UTF-8.
+	 *
+	 * @param path Relative path of the file, using forward slashes
+	 * @return Buffered writer of the file content
+	 * @throws IOException If the file cannot be opened
+	 */
+	public Writer openWriter(String path) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(openStream(path), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Determines if a file already exists in this sink from a previous run.
+	 *
+	 * @param path Relative path of the file
+	 * @return True if it does, false otherwise
+	 */
+	public boolean exists(String path)
+	{
+		return false;
+	}
+
+	/**
+	 * Finishes writing every file. Does nothing by default.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.minecraft;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * The fields and the write packet method of a single class, read from its bytecode without loading the class.
+ */
+class CodeClass {
+	/**
+	 * A field written by the write packet method.
+	 */
+	public static class FieldWrite {
+		/**
+		 * Marks the point where the write packet method of the super class is called.
+		 */
+		public static final FieldWrite SUPER_METHOD = new FieldWrite(null, null);
+		
+		private final String fieldName;
+		private final WireType wireType;
+		
+		public FieldWrite(String fieldName, WireType wireType) {
+			this.fieldName = fieldName;
+			this.wireType = wireType;
+		}
+		
+		public String getFieldName() {
+			return fieldName;
+		}
+		
+		/**
+		 * Retrieve how the field is written.
+		 * @return The wire type, or NULL if it is unknown.
+		 */
+		public WireType getWireType() {
+			return wireType;
+		}
+	}
+	
+	// Marks the super method call for the field enumerator - angle brackets are not allowed in field names
+	private static final String SUPER_METHOD_NAME = "<super>";
+	
+	private final String className;
+	private final String superName;
+	private final List<CodeField> fields;
+	private final List<FieldWrite> writeOrder;
+	private final boolean straightLine;
+	private final HashCode bytecodeHash;
+	
+	private CodeClass(String className, String superName, List<CodeField> fields, List<FieldWrite> writeOrder, boolean straightLine, 
+					  HashCode bytecodeHash) {
+		this.className = className;
+		this.superName = superName;
+		this.fields = Collections.unmodifiableList(fields);
+		this.writeOrder = writeOrder != null ? Collections.unmodifiableList(writeOrder) : null;
+		this.straightLine = straightLine;
+		this.bytecodeHash = bytecodeHash;
+	}
+	
+	/**
+	 * Read a class from its bytecode.
+	 * @param data - the bytecode of the class.
+	 * @param methodName - name of the write packet method.
+	 * @param methodDesc - descriptor of the write packet method.
+	 * @return The class.
+	 */
+	public static CodeClass read(byte[] data, final String methodName, final String methodDesc) {
+		ClassReader reader = new ClassReader(data);
+		final String className = reader.getClassName();
+		final List<CodeField> fields = new ArrayList<>();
+		final MethodNode[] writeMethod = new MethodNode[1];
+		
+		reader.accept(new ClassVisitor(Opcodes.ASM4) {
+			@Override
+			public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+				fields.add(new CodeField(className, name, desc, access));
+				return null;
+			}
+			
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+				// Is this our write packet method?
+				if (name.equals(methodName) && desc.equals(methodDesc)) {
+					return writeMethod[0] = new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions);
+				} else {
+					return null;
+				}
+			}
+		}, ClassReader.SKIP_FRAMES);
+		
+		List<FieldWrite> writeOrder = null;
+		boolean straightLine = false;
+		
+		if (writeMethod[0] != null) {
+			MethodNode method = writeMethod[0];
+			String serializerClass = Type.getArgumentTypes(method.desc)[0].getInternalName();
+			WireTypeAnalyzer analyzer = new WireTypeAnalyzer(className, serializerClass, method.name, method.desc);
+			
+			try {
+				writeOrder = analyzer.analyze(method);
+				straightLine = analyzer.isStraightLine();
+			} catch (AnalyzerException e) {
+				System.err.println("Cannot analyze " + className + "." + method.name + ", falling back to the first field of each line: " + e);
+				writeOrder = enumerateWriteOrder(className, method);
+			}
+		}
+		return new CodeClass(className, reader.getSuperName(), fields, writeOrder, straightLine, Hashing.sha256().hashBytes(data));
+	}
+	
+	private static List<FieldWrite> enumerateWriteOrder(String className, final MethodNode method) {
+		// Wire types are unknown
+		List<String> names = new ArrayList<>();
+		List<FieldWrite> result = new ArrayList<>();
+		
+		method.accept(new FieldEnumerator(className, names) {
+			@Override
+			public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+				// The super method writes its fields at this point
+				if (opcode == Opcodes.INVOKESPECIAL && name.equals(method.name) && desc.equals(method.desc)) {
+					output.add(SUPER_METHOD_NAME);
+				}
+			}
+		});
+		
+		for (String name : names) {
+			result.add(SUPER_METHOD_NAME.equals(name) ? FieldWrite.SUPER_METHOD : new FieldWrite(name, null));
+		}
+		return result;
+	}
+	
+	/**
+	 * Retrieve the internal name of the class.
+	 * @return The internal name.
+	 */
+	public String getClassName() {
+		return className;
+	}
+	
+	/**
+	 * Retrieve the internal name of the super class.
+	 * @return The internal name, or NULL if this is {@link Object}.
+	 */
+	public String getSuperName() {
+		return superName;
+	}
+	
+	/**
+	 * Retrieve the fields declared by this class, in the order they are declared.
+	 * @return The declared fields.
+	 */
+	public List<CodeField> getFields() {
+		return fields;
+	}
+	
+	/**
+	 * Retrieve a field declared by this class.
+	 * @param name - name of the field.
+	 * @return The field, or NULL if this class does not declare it.
+	 */
+	public CodeField getField(String name) {
+		for (CodeField field : fields) {
+			if (field.getName().equals(name))
+				return field;
+		}
+		return null;
+	}
+	
+	/**
+	 * Retrieve the fields of this class in the order they are written by the write packet method.
+	 * <p>
+	 * The fields of the super class are written where {@link FieldWrite#SUPER_METHOD} occurs.
+	 * @return The written fields, or NULL if this class does not declare a write packet method.
+	 */
+	public List<FieldWrite> getWriteOrder() {
+		return writeOrder;
+	}
+	
+	/**
+	 * Determine if the write packet method writes one field at a time, outside of any branch or loop.
+	 * @return TRUE if it does, FALSE if it does not or it could not be analyzed.
+	 * @see WireTypeAnalyzer#isStraightLine()
+	 */
+	public boolean isStraightLine() {
+		return straightLine;
+	}
+	
+	/**
+	 * Retrieve the SHA-256 hash of the bytecode of this class.
+	 * @return The hash.
+	 */
+	public HashCode getBytecodeHash() {
+		return bytecodeHash;
+	}
+}
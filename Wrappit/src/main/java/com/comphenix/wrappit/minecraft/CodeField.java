@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.minecraft;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * A field of a Minecraft class, as declared in its bytecode.
+ * <p>
+ * Unlike {@link java.lang.reflect.Field}, this does not require the declaring class or the field type to be loaded.
+ */
+public class CodeField {
+	private final String declaringClass;
+	private final String name;
+	private final String descriptor;
+	private final int access;
+	
+	/**
+	 * Construct a new field.
+	 * @param declaringClass - internal name of the class that declares the field.
+	 * @param name - name of the field.
+	 * @param descriptor - type descriptor of the field.
+	 * @param access - access flags of the field.
+	 */
+	public CodeField(String declaringClass, String name, String descriptor, int access) {
+		this.declaringClass = declaringClass;
+		this.name = name;
+		this.descriptor = descriptor;
+		this.access = access;
+	}
+	
+	/**
+	 * Retrieve the internal name of the class that declares this field.
+	 * @return The internal name.
+	 */
+	public String getDeclaringClass() {
+		return declaringClass;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Retrieve the type descriptor of this field, such as <code>I</code> or <code>Ljava/lang/String;</code>.
+	 * @return The type descriptor.
+	 */
+	public String getDescriptor() {
+		return descriptor;
+	}
+	
+	/**
+	 * Retrieve the access flags of this field.
+	 * @return The access flags, as in {@link Opcodes}.
+	 */
+	public int getAccess() {
+		return access;
+	}
+	
+	public boolean isStatic() {
+		return (access & Opcodes.ACC_STATIC) != 0;
+	}
+	
+	public boolean isPublic() {
+		return (access & Opcodes.ACC_PUBLIC) != 0;
+	}
+	
+	public boolean isFinal() {
+		return (access & Opcodes.ACC_FINAL) != 0;
+	}
+	
+	/**
+	 * Retrieve the binary name of the type of this field, as returned by {@link Class#getName()}.
+	 * @return The binary name.
+	 */
+	public String getTypeName() {
+		Type type = Type.getType(descriptor);
+		
+		switch (type.getSort()) {
+			case Type.ARRAY:
+				return descriptor.replace('/', '.');
+			case Type.OBJECT:
+				return type.getInternalName().replace('/', '.');
+			default:
+				return type.getClassName();
+		}
+	}
+	
+	/**
+	 * Retrieve the simple name of the type of this field, as returned by {@link Class#getSimpleName()}.
+	 * @return The simple name.
+	 */
+	public String getSimpleTypeName() {
+		String name = Type.getType(descriptor).getClassName();
+		return name.substring(Math.max(name.lastIndexOf('.'), name.lastIndexOf('$')) + 1);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * declaringClass.hashCode() + name.hashCode();
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (obj instanceof CodeField) {
+			CodeField other = (CodeField) obj;
+			return declaringClass.equals(other.declaringClass) && name.equals(other.name);
+		}
+		return false;
+	}
+	
+	@Override
+	public String toString() {
+		return getTypeName() + " " + declaringClass.replace('/', '.') + "." + name;
+	}
+}
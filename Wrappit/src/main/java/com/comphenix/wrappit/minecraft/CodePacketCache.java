@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.minecraft;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.wrappit.minecraft.WireType.Encoding;
+
+/**
+ * A compact binary cache of the packets read from the server, keyed by a hash of the server jar
+ * and the version of the code model.
+ */
+class CodePacketCache {
+	private static final int MAGIC = 0x434F4445;
+	private static final int VERSION = 3;
+	
+	/**
+	 * A cached packet.
+	 */
+	public static class Entry {
+		private final CodePacketInfo info;
+		private final String bytecodeHash;
+		
+		public Entry(CodePacketInfo info, String bytecodeHash) {
+			this.info = info;
+			this.bytecodeHash = bytecodeHash;
+		}
+		
+		public CodePacketInfo getInfo() {
+			return info;
+		}
+		
+		public String getBytecodeHash() {
+			return bytecodeHash;
+		}
+	}
+	
+	private final File file;
+	
+	public CodePacketCache(File file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Load every cached packet.
+	 * @param jarHash - hash of the current server jar.
+	 * @return The cached packets, or NULL if the cache is missing, belongs to a different jar or was read by a different model version.
+	 * @throws IOException If the cache cannot be read.
+	 */
+	public Map<PacketType, Entry> load(String jarHash) throws IOException {
+		if (!file.exists())
+			return null;
+		
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION)
+				return null;
+			if (input.readInt() != CodePacketReader.MODEL_VERSION || !jarHash.equals(input.readUTF()))
+				return null;
+			
+			// Fields are shared by many packets, so they are stored once
+			CodeField[] fields = new CodeField[input.readInt()];
+			
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = new CodeField(input.readUTF(), input.readUTF(), input.readUTF(), input.readInt());
+			}
+			
+			Map<String, PacketType> types = getTypesByKey();
+			Map<PacketType, Entry> result = new HashMap<>();
+			int packetCount = input.readInt();
+			
+			for (int i = 0; i < packetCount; i++) {
+				String key = input.readUTF();
+				String bytecodeHash = input.readUTF();
+				boolean straightLine = input.readBoolean();
+				List<CodeField> memoryOrder = new ArrayList<>();
+				List<CodeField> networkOrder = new ArrayList<>();
+				List<WireType> wireTypes = new ArrayList<>();
+				Map<String, List<String>> typeHierarchies = new HashMap<>();
+				
+				for (int j = input.readInt(); j > 0; j--) {
+					memoryOrder.add(fields[input.readInt()]);
+				}
+				for (int j = input.readInt(); j > 0; j--) {
+					networkOrder.add(fields[input.readInt()]);
+					wireTypes.add(input.readBoolean() ? readWireType(input) : null);
+				}
+				for (int j = input.readInt(); j > 0; j--) {
+					String descriptor = input.readUTF();
+					List<String> hierarchy = new ArrayList<>();
+					
+					for (int k = input.readInt(); k > 0; k--) {
+						hierarchy.add(input.readUTF());
+					}
+					typeHierarchies.put(descriptor, hierarchy);
+				}
+				
+				// Skip packets this version of ProtocolLib does not know about
+				PacketType type = types.get(key);
+				if (type != null) {
+					CodePacketInfo info = new CodePacketInfo(memoryOrder, networkOrder, wireTypes, straightLine, typeHierarchies, type);
+					result.put(type, new Entry(info, bytecodeHash));
+				}
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Replace the cache with the given packets.
+	 * @param jarHash - hash of the server jar the packets were read from.
+	 * @param packets - the packets.
+	 * @throws IOException If the cache cannot be written.
+	 */
+	public void save(String jarHash, Map<PacketType, Entry> packets) throws IOException {
+		Map<CodeField, Integer> fieldIds = new LinkedHashMap<>();
+		
+		for (Entry entry : packets.values()) {
+			for (CodeField field : entry.getInfo().getMemoryOrder())
+				addField(fieldIds, field);
+			for (CodeField field : entry.getInfo().getNetworkOrder())
+				addField(fieldIds, field);
+		}
+		
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(CodePacketReader.MODEL_VERSION);
+			output.writeUTF(jarHash);
+			output.writeInt(fieldIds.size());
+			
+			for (CodeField field : fieldIds.keySet()) {
+				output.writeUTF(field.getDeclaringClass());
+				output.writeUTF(field.getName());
+				output.writeUTF(field.getDescriptor());
+				output.writeInt(field.getAccess());
+			}
+			output.writeInt(packets.size());
+			
+			for (Entry entry : packets.values()) {
+				CodePacketInfo info = entry.getInfo();
+				Map<String, List<String>> typeHierarchies = new LinkedHashMap<>();
+				
+				output.writeUTF(getKey(info.getType()));
+				output.writeUTF(entry.getBytecodeHash());
+				output.writeBoolean(info.isStraightLine());
+				output.writeInt(info.getMemoryOrder().size());
+				
+				for (CodeField field : info.getMemoryOrder()) {
+					output.writeInt(fieldIds.get(field));
+					typeHierarchies.put(field.getDescriptor(), info.getTypeHierarchy(field));
+				}
+				output.writeInt(info.getNetworkOrder().size());
+				
+				for (int i = 0; i < info.getNetworkOrder().size(); i++) {
+					WireType wireType = info.getWireType(i);
+					
+					output.writeInt(fieldIds.get(info.getNetworkOrder().get(i)));
+					output.writeBoolean(wireType != null);
+					
+					if (wireType != null)
+						writeWireType(output, wireType);
+				}
+				for (CodeField field : info.getNetworkOrder()) {
+					typeHierarchies.put(field.getDescriptor(), info.getTypeHierarchy(field));
+				}
+				output.writeInt(typeHierarchies.size());
+				
+				for (Map.Entry<String, List<String>> hierarchy : typeHierarchies.entrySet()) {
+					output.writeUTF(hierarchy.getKey());
+					output.writeInt(hierarchy.getValue().size());
+					
+					for (String name : hierarchy.getValue()) {
+						output.writeUTF(name);
+					}
+				}
+			}
+		}
+	}
+	
+	private void addField(Map<CodeField, Integer> fieldIds, CodeField field) {
+		if (!fieldIds.containsKey(field))
+			fieldIds.put(field, fieldIds.size());
+	}
+	
+	private WireType readWireType(DataInputStream input) throws IOException {
+		return new WireType(input.readUTF(), input.readUTF(), input.readUTF(), Encoding.valueOf(input.readUTF()), input.readBoolean());
+	}
+	
+	private void writeWireType(DataOutputStream output, WireType wireType) throws IOException {
+		output.writeUTF(wireType.getOwner());
+		output.writeUTF(wireType.getName());
+		output.writeUTF(wireType.getDescriptor());
+		output.writeUTF(wireType.getEncoding().name());
+		output.writeBoolean(wireType.isDirect());
+	}
+	
+	private Map<String, PacketType> getTypesByKey() {
+		Map<String, PacketType> result = new HashMap<>();
+		
+		for (PacketType type : PacketType.values()) {
+			result.put(getKey(type), type);
+		}
+		return result;
+	}
+	
+	/**
+	 * Retrieve a key that identifies a packet type across ProtocolLib versions.
+	 */
+	private String getKey(PacketType type) {
+		return type.getProtocol() + "/" + type.getSender() + "/" + type.name();
+	}
+}
@@ -22,19 +22,27 @@
  */
 package com.comphenix.wrappit.minecraft;
 
-import java.lang.reflect.Field;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import com.comphenix.protocol.PacketType;
 
 public class CodePacketInfo {
-	private final List<Field> memoryOrder;
-	private final List<Field> networkOrder;
+	private final List<CodeField> memoryOrder;
+	private final List<CodeField> networkOrder;
+	private final List<WireType> wireTypes;
+	private final boolean straightLine;
+	private final Map<String, List<String>> typeHierarchies;
 	private final PacketType type;
 	
-	public CodePacketInfo(List<Field> memoryOrder, List<Field> networkOrder, PacketType type) {
+	public CodePacketInfo(List<CodeField> memoryOrder, List<CodeField> networkOrder, List<WireType> wireTypes, boolean straightLine,
+						  Map<String, List<String>> typeHierarchies, PacketType type) {
 		this.memoryOrder = memoryOrder;
 		this.networkOrder = networkOrder;
+		this.wireTypes = wireTypes;
+		this.straightLine = straightLine;
+		this.typeHierarchies = typeHierarchies;
 		this.type = type;
 	}
 
@@ -48,13 +56,42 @@ public class CodePacketInfo {
 		return memoryOrder.size() == networkOrder.size();
 	}
 	
-	public List<Field> getMemoryOrder() {
+	public List<CodeField> getMemoryOrder() {
 		return memoryOrder;
 	}
 
-	public List<Field> getNetworkOrder() {
+	public List<CodeField> getNetworkOrder() {
 		return networkOrder;
 	}
+	
+	/**
+	 * Retrieve how a field in the network order is written.
+	 * @param fieldIndex - the index of the field in the network order.
+	 * @return The wire type, or NULL if it is unknown.
+	 */
+	public WireType getWireType(int fieldIndex) {
+		return wireTypes.get(fieldIndex);
+	}
+	
+	/**
+	 * Determine if the network order describes every byte of the packet.
+	 * <p>
+	 * That is, every call that writes to the serializer writes exactly one field as is, and none of them are made in a branch or a loop.
+	 * @return TRUE if it does, FALSE otherwise.
+	 */
+	public boolean isStraightLine() {
+		return straightLine;
+	}
+	
+	/**
+	 * Retrieve the type of a field followed by each of its super classes, as binary names.
+	 * @param field - a field of this packet.
+	 * @return The binary names, ending before {@link Object}.
+	 */
+	public List<String> getTypeHierarchy(CodeField field) {
+		List<String> hierarchy = typeHierarchies.get(field.getDescriptor());
+		return hierarchy != null ? hierarchy : Collections.singletonList(field.getTypeName());
+	}
 
 	public PacketType getType() {
 		return type;
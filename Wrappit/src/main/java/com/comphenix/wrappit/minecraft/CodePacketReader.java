@@ -22,23 +22,169 @@
  */
 package com.comphenix.wrappit.minecraft;
 
+import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.MethodVisitor;
-import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 import com.comphenix.protocol.PacketType;
-import com.comphenix.protocol.utility.Constants;
+import com.comphenix.protocol.utility.MinecraftReflection;
+import com.comphenix.wrappit.minecraft.CodeClass.FieldWrite;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 
+/**
+ * Reads the fields of packets from the bytecode of the server.
+ * <p>
+ * Server classes are never inspected through reflection, so they do not have to be initialized.
+ */
 public class CodePacketReader {
-	// Write packet method signature
-	private static final String WRITE_PACKET_SIGNATURE = "(Lnet/minecraft/server/" + Constants.PACKAGE_VERSION + "/PacketDataSerializer;)V";
+	/**
+	 * The fields written by a class, and how each of them is written.
+	 */
+	private static class NetworkOrder {
+		private final List<CodeField> fields;
+		private final List<WireType> wireTypes;
+		private final boolean straightLine;
+		
+		public NetworkOrder(List<CodeField> fields, List<WireType> wireTypes, boolean straightLine) {
+			this.fields = Collections.unmodifiableList(fields);
+			this.wireTypes = Collections.unmodifiableList(wireTypes);
+			this.straightLine = straightLine;
+		}
+	}
+	
+	/**
+	 * Version of the packets read from the bytecode. Increment this whenever the network order or the wire types
+	 * are found differently, so that cached packets and incrementally generated wrappers are read again.
+	 */
+	public static final int MODEL_VERSION = 2;
+	
 	private static final String WRITE_PACKET_NAME = "b";
+	private static final String OBJECT_CLASS = "java/lang/Object";
+	
+	// Write packet method signature, for the version of the running server
+	private final String writePacketSignature;
+	
+	// Internal name of the Minecraft package
+	private final String minecraftPackage;
+	
+	// Every class read so far, by internal name
+	private final ConcurrentMap<String, CodeClass> classes = new ConcurrentHashMap<>();
+	
+	// Network order of every class read so far, including the fields written by its super classes
+	private final ConcurrentMap<String, NetworkOrder> networkOrders = new ConcurrentHashMap<>();
+	
+	// Packets loaded from the code model cache
+	private Map<PacketType, CodePacketCache.Entry> cachedPackets = Collections.emptyMap();
+	
+	public CodePacketReader() {
+		minecraftPackage = MinecraftReflection.getMinecraftPackage().replace('.', '/');
+		writePacketSignature = "(L" + minecraftPackage + "/PacketDataSerializer;)V";
+	}
+	
+	/**
+	 * Construct a reader that parses every packet class of the server jar up front, in a single pass over the jar.
+	 * <p>
+	 * Classes that are not in the jar, or not named Packet*, are still read through the class loader.
+	 * @param serverJar - the server jar.
+	 * @param threads - number of threads used to parse the classes.
+	 * @throws IOException If the jar cannot be read.
+	 */
+	public CodePacketReader(File serverJar, int threads) throws IOException {
+		this();
+		scanJar(serverJar, threads);
+	}
+	
+	/**
+	 * Construct a reader that loads every packet from a cache, provided it was written for the same server jar.
+	 * <p>
+	 * Otherwise every packet is read from the jar as in {@link #CodePacketReader(File, int)}, and the cache is replaced.
+	 * @param serverJar - the server jar.
+	 * @param threads - number of threads used to parse the classes.
+	 * @param cacheFile - the cache file.
+	 * @throws IOException If the jar or the cache cannot be read.
+	 */
+	public CodePacketReader(File serverJar, int threads, File cacheFile) throws IOException {
+		this();
+		CodePacketCache cache = new CodePacketCache(cacheFile);
+		String jarHash = Files.asByteSource(serverJar).hash(Hashing.sha256()).toString();
+		Map<PacketType, CodePacketCache.Entry> packets = cache.load(jarHash);
+		
+		if (packets == null) {
+			scanJar(serverJar, threads);
+			packets = readPackets();
+			cache.save(jarHash, packets);
+		}
+		cachedPackets = packets;
+	}
+	
+	/**
+	 * Read every registered packet.
+	 * @return The packets, by type.
+	 */
+	private Map<PacketType, CodePacketCache.Entry> readPackets() {
+		Map<PacketType, CodePacketCache.Entry> result = new HashMap<>();
+		
+		for (PacketType type : PacketType.values()) {
+			if (type.getPacketClass() == null)
+				continue;
+			
+			try {
+				result.put(type, new CodePacketCache.Entry(readPacket(type), getBytecodeHash(type)));
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Cannot read packet " + type + ": " + e);
+			}
+		}
+		return result;
+	}
+	
+	private void scanJar(File serverJar, int threads) throws IOException {
+		String prefix = minecraftPackage + "/Packet";
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> tasks = new ArrayList<>();
+		
+		try (JarFile jar = new JarFile(serverJar)) {
+			// Read every class in this thread, and parse them in the background
+			for (JarEntry entry : Collections.list(jar.entries())) {
+				String name = entry.getName();
+				
+				if (name.startsWith(prefix) && name.endsWith(".class")) {
+					try (InputStream input = jar.getInputStream(entry)) {
+						byte[] data = ByteStreams.toByteArray(input);
+						
+						tasks.add(executor.submit(() -> {
+							CodeClass codeClass = readClass(data);
+							classes.put(codeClass.getClassName(), codeClass);
+						}));
+					}
+				}
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading " + serverJar, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Cannot parse packet class in " + serverJar, e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
 	
 	/**
 	 * Read a particular packet from local code.
@@ -47,98 +193,203 @@ public class CodePacketReader {
 	 * @throws IOException If we are unable to parse the network order.
 	 */
 	public CodePacketInfo readPacket(PacketType type) throws IOException {
+		CodePacketCache.Entry cached = cachedPackets.get(type);
+		
+		if (cached != null)
+			return cached.getInfo();
+		
+		String className = getClassName(type);
+		List<CodeField> memoryOrder = readMemoryOrder(className);
+		NetworkOrder networkOrder = readNetworkOrder(className);
+		Map<String, List<String>> typeHierarchies = new HashMap<>();
+		
+		for (CodeField field : Iterables.concat(memoryOrder, networkOrder.fields)) {
+			if (!typeHierarchies.containsKey(field.getDescriptor()))
+				typeHierarchies.put(field.getDescriptor(), readTypeHierarchy(field));
+		}
+		return new CodePacketInfo(memoryOrder, networkOrder.fields, networkOrder.wireTypes, networkOrder.straightLine, typeHierarchies, type);
+	}
+	
+	/**
+	 * Compute a hash of the bytecode a packet is read from.
+	 * <p>
+	 * Every super class is included, as both the memory and network order may depend on them.
+	 * @param type - the type of the packet.
+	 * @return The hexadecimal hash.
+	 * @throws IOException If the bytecode cannot be read.
+	 */
+	public String getBytecodeHash(PacketType type) throws IOException {
+		CodePacketCache.Entry cached = cachedPackets.get(type);
+		
+		if (cached != null)
+			return cached.getBytecodeHash();
+		
+		Hasher hasher = Hashing.sha256().newHasher();
+		
+		for (String name = getClassName(type); name != null && !name.equals(OBJECT_CLASS); ) {
+			CodeClass codeClass = getCodeClass(name);
+			
+			hasher.putBytes(codeClass.getBytecodeHash().asBytes());
+			name = codeClass.getSuperName();
+		}
+		return hasher.hash().toString();
+	}
+	
+	/**
+	 * Retrieve the internal name of the class of a packet.
+	 * <p>
+	 * Only the name of the class is used, it is never inspected or initialized.
+	 * @param type - the packet type.
+	 * @return The internal name.
+	 */
+	private String getClassName(PacketType type) {
 		Class<?> packetClass = type.getPacketClass();
 		
-		if (packetClass != null) {
-			List<Field> memoryOrder = readMemoryOrder(packetClass);
-			List<Field> networkOrder = readNetworkOrder(packetClass);
-			return new CodePacketInfo(memoryOrder, networkOrder, type);
-		} else {
+		if (packetClass == null)
 			throw new IllegalArgumentException("Packet " + type + " is not registered.");
-		}
+		return Type.getInternalName(packetClass);
 	}
 	
-	private List<Field> readMemoryOrder(Class<?> packetClass) {
-		final List<Field> result = new ArrayList<>();
-		final Set<Field> candidates = setUnion(packetClass.getDeclaredFields(), packetClass.getFields());
-				
-		// Use reflection to do this very simply
-		for (Field field : candidates) {
+	private List<CodeField> readMemoryOrder(String className) throws IOException {
+		CodeClass codeClass = getCodeClass(className);
+		Set<CodeField> candidates = new LinkedHashSet<>(codeClass.getFields());
+		
+		// Every declared field, followed by the public fields of the super classes
+		for (String name = codeClass.getSuperName(); name != null && !name.equals(OBJECT_CLASS); ) {
+			CodeClass superClass = getCodeClass(name);
+			
+			for (CodeField field : superClass.getFields()) {
+				if (field.isPublic())
+					candidates.add(field);
+			}
+			name = superClass.getSuperName();
+		}
+		
+		final List<CodeField> result = new ArrayList<>();
+		
+		for (CodeField field : candidates) {
 			// Skip static fields
 			if (isValidField(field)) {
 				result.add(field);
 			}
 		}
-		
 		return result;
 	}
 
-	private List<Field> readNetworkOrder(final Class<?> packetClass) throws IOException {
-		final ClassReader reader = new ClassReader(packetClass.getCanonicalName());
-		final List<Field> result = new ArrayList<>();
-
-		reader.accept(new ClassVisitor(Opcodes.ASM4) {
-			@Override
-			public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-				final String writePacketName = name;
-				
-				// Is this our write packet method?
-				if (desc.equals(WRITE_PACKET_SIGNATURE) && writePacketName.equals(WRITE_PACKET_NAME)) {
-					return new FieldEnumerator(packetClass, result) {
-						@Override
-						public void visitMethodInsn(int opcode, String owner, String name, String desc) {
-							// Super method call?
-							if (opcode == Opcodes.INVOKESPECIAL) {
-								if (name.equals(writePacketName) && desc.equals(WRITE_PACKET_SIGNATURE)) {
-									// Add the fields written there too
-									try {
-										List<Field> superMethod = readNetworkOrder(packetClass.getSuperclass());
-										output.addAll(superMethod);
-									} catch (IOException e) {
-										throw new RuntimeException("Inner I/O error", e);
-									}
-								}
-							}
-						}
-						
-						@Override
-						protected boolean processField(Field field) {
-							return isValidField(field);
-						};
-					};
+	private NetworkOrder readNetworkOrder(String className) throws IOException {
+		NetworkOrder result = networkOrders.get(className);
+		
+		// Super classes are shared by many packets, so they are only resolved once
+		if (result == null) {
+			result = resolveNetworkOrder(className);
+			networkOrders.putIfAbsent(className, result);
+		}
+		return result;
+	}
+	
+	private NetworkOrder resolveNetworkOrder(String className) throws IOException {
+		CodeClass codeClass = getCodeClass(className);
+		List<FieldWrite> writeOrder = codeClass.getWriteOrder();
+		List<CodeField> fields = new ArrayList<>();
+		List<WireType> wireTypes = new ArrayList<>();
+		boolean straightLine = writeOrder != null && codeClass.isStraightLine();
+		
+		if (writeOrder != null) {
+			for (FieldWrite write : writeOrder) {
+				if (write == FieldWrite.SUPER_METHOD) {
+					// Add the fields written there too
+					NetworkOrder superOrder = readNetworkOrder(codeClass.getSuperName());
+					fields.addAll(superOrder.fields);
+					wireTypes.addAll(superOrder.wireTypes);
+					straightLine &= superOrder.straightLine;
 				} else {
-					return null;
+					CodeField field = getField(codeClass, write.getFieldName());
+					
+					// Skip static fields here too
+					if (isValidField(field)) {
+						fields.add(field);
+						wireTypes.add(write.getWireType());
+					} else {
+						straightLine = false;
+					}
+				}
+			}
+		}
+		return new NetworkOrder(fields, wireTypes, straightLine);
+	}
+	
+	/**
+	 * Retrieve the binary name of the type of a field, followed by the binary name of each of its super classes.
+	 * @param field - the field.
+	 * @return The binary names, ending before {@link Object}.
+	 */
+	private List<String> readTypeHierarchy(CodeField field) {
+		List<String> result = new ArrayList<>();
+		result.add(field.getTypeName());
+		
+		// Arrays and primitives have no super classes of interest
+		if (field.getDescriptor().startsWith("L")) {
+			String name = Type.getType(field.getDescriptor()).getInternalName();
+			
+			try {
+				while ((name = getCodeClass(name).getSuperName()) != null && !name.equals(OBJECT_CLASS)) {
+					result.add(name.replace('/', '.'));
 				}
+			} catch (IOException | IllegalArgumentException e) {
+				// The rest of the hierarchy is not available, or has a class version ASM cannot read
 			}
-		}, ClassReader.EXPAND_FRAMES);
+		}
+		return Collections.unmodifiableList(result);
+	}
+	
+	private CodeClass getCodeClass(String className) throws IOException {
+		CodeClass result = classes.get(className);
 		
+		if (result == null) {
+			try (InputStream input = ClassLoader.getSystemResourceAsStream(className + ".class")) {
+				if (input == null)
+					throw new IOException("Cannot find bytecode of " + className.replace('/', '.'));
+				result = readClass(ByteStreams.toByteArray(input));
+			}
+			classes.putIfAbsent(className, result);
+		}
 		return result;
 	}
 	
+	private CodeClass readClass(byte[] data) {
+		return CodeClass.read(data, WRITE_PACKET_NAME, writePacketSignature);
+	}
+	
 	/**
-	 * Determine if a field should be included in the list.
-	 * @param field - the field to check.
-	 * @return TRUE if it should, FALSE otherwise.
+	 * Retrieve a field by searching through the inheritance chain.
+	 * @param codeClass - the class to start looking. 
+	 * @param name - name of the field to find.
+	 * @return The resulting field.
+	 * @throws IOException If a super class cannot be read.
 	 */
-	private boolean isValidField(Field field) {
-		return !Modifier.isStatic(field.getModifiers()) &&
-				// And skip fields in the Packet super class
-			   !field.getDeclaringClass().getSimpleName().equals("Packet");
+	private CodeField getField(CodeClass codeClass, String name) throws IOException {
+		// Go through every defined field of every class in the hierachy
+		while (true) {
+			CodeField field = codeClass.getField(name);
+			
+			if (field != null)
+				return field;
+			if (codeClass.getSuperName() == null)
+				throw new NoSuchFieldError(name);
+			codeClass = getCodeClass(codeClass.getSuperName());
+		}
 	}
 	
 	/**
-	 * Compute the union of every given array.
-	 * @param array - array of arrays.
-	 * @return Set containing the union of all the arrays.
+	 * Determine if a field should be included in the list.
+	 * @param field - the field to check.
+	 * @return TRUE if it should, FALSE otherwise.
 	 */
-	@SafeVarargs
-	private static <T> Set<T> setUnion(T[]... array) {
-		Set<T> result = new LinkedHashSet<>();
-		
-		for (T[] elements : array) {
-			Collections.addAll(result, elements);
-		}
+	private boolean isValidField(CodeField field) {
+		String owner = field.getDeclaringClass();
 		
-		return result;
+		return !field.isStatic() &&
+				// And skip fields in the Packet super class
+			   !owner.substring(owner.lastIndexOf('/') + 1).equals("Packet");
 	}
 }
@@ -22,7 +22,6 @@
  */
 package com.comphenix.wrappit.minecraft;
 
-import java.lang.reflect.Field;
 import java.util.List;
 
 import org.objectweb.asm.Label;
@@ -31,15 +30,18 @@ import org.objectweb.asm.Opcodes;
 
 public class FieldEnumerator extends MethodVisitor {
 	boolean newLine = false;
-	private Class<?> packetClass;
 	private String className;
 	
-	protected List<Field> output;
+	protected List<String> output;
 	
-	public FieldEnumerator(Class<?> packetClass, List<Field> output) {
+	/**
+	 * Enumerate the fields of a class that are read by a method, in the order they are read.
+	 * @param className - internal name of the class.
+	 * @param output - the names of the fields.
+	 */
+	public FieldEnumerator(String className, List<String> output) {
 		super(Opcodes.ASM4);
-		this.packetClass = packetClass;
-		this.className = packetClass.getCanonicalName().replace(".", "/");
+		this.className = className;
 		
 		// The output
 		this.output = output;
@@ -60,45 +62,17 @@ public class FieldEnumerator extends MethodVisitor {
 			else
 				return;
 			
-			try {
-				if (owner.equals(className)) {
-					Field field = getField(packetClass, name);
-					
-					// Skip static fields here too
-					if (processField(field)) {
-						output.add(field);
-					}
-				}
-				
-			} catch (Exception e) {
-				throw new RuntimeException("Error", e);
+			if (owner.equals(className) && processField(name)) {
+				output.add(name);
 			}
 		}
 	}
 	
 	/**
 	 * Accept all by default.
-	 * @param field - field to filter.
+	 * @param name - name of the field to filter.
 	 */
-	protected boolean processField(Field field) {
+	protected boolean processField(String name) {
 		return true;
 	}
-		
-	/**
-	 * Retrieve a field by searching through the inheritance chain.
-	 * @param clazz - the class to start looking. 
-	 * @param name - name of the field to find.
-	 * @return The resulting field.
-	 */
-	private Field getField(Class<?> clazz, String name) {
-		// Go through every defined field of every class in the hierachy
-		for (; clazz != null; clazz = clazz.getSuperclass()) {
-			for (Field field : clazz.getDeclaredFields()) {
-				if (field.getName().equals(name))
-					return field;
-			}
-		}
-
-		throw new NoSuchFieldError(name);
-	}
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.minecraft;
+
+/**
+ * The call that writes the value of a field to the network, found in the write packet method of a packet.
+ */
+public class WireType {
+	/**
+	 * The ways a value can be encoded by the packet serializer.
+	 */
+	public enum Encoding {
+		VAR_INT(-1),
+		VAR_LONG(-1),
+		BOOLEAN(1),
+		BYTE(1),
+		SHORT(2),
+		INT(4),
+		LONG(8),
+		FLOAT(4),
+		DOUBLE(8),
+		
+		/**
+		 * A UTF-8 string prefixed with its length as a VarInt.
+		 */
+		STRING(-1),
+		
+		/**
+		 * Two longs.
+		 */
+		UUID(16),
+		
+		/**
+		 * A block position packed into a long.
+		 */
+		BLOCK_POSITION(8),
+		
+		/**
+		 * The ordinal of an enum as a VarInt.
+		 */
+		ENUM(-1),
+		
+		/**
+		 * A byte array prefixed with its length as a VarInt.
+		 */
+		BYTE_ARRAY(-1),
+		
+		/**
+		 * An int array prefixed with its length, with every element written as a VarInt.
+		 */
+		VAR_INT_ARRAY(-1),
+		
+		/**
+		 * Bytes without a length prefix.
+		 */
+		RAW_BYTES(-1),
+		
+		/**
+		 * Written by some other method, such as an NBT compound or the write method of another object.
+		 */
+		OTHER(-1);
+		
+		private final int fixedSize;
+		
+		private Encoding(int fixedSize) {
+			this.fixedSize = fixedSize;
+		}
+		
+		/**
+		 * Retrieve the number of bytes this encoding always uses.
+		 * @return The number of bytes, or -1 if it depends on the value.
+		 */
+		public int getFixedSize() {
+			return fixedSize;
+		}
+	}
+	
+	private final String owner;
+	private final String name;
+	private final String descriptor;
+	private final Encoding encoding;
+	private final boolean direct;
+	
+	/**
+	 * Construct a new wire type.
+	 * @param owner - internal name of the class of the method that writes the value.
+	 * @param name - name of the method that writes the value.
+	 * @param descriptor - descriptor of the method that writes the value.
+	 * @param encoding - the encoding of this method.
+	 * @param direct - whether or not the field is written as is, rather than converted first.
+	 */
+	public WireType(String owner, String name, String descriptor, Encoding encoding, boolean direct) {
+		this.owner = owner;
+		this.name = name;
+		this.descriptor = descriptor;
+		this.encoding = encoding;
+		this.direct = direct;
+	}
+	
+	/**
+	 * Retrieve the internal name of the class of the method that writes the value.
+	 * @return The internal name.
+	 */
+	public String getOwner() {
+		return owner;
+	}
+	
+	/**
+	 * Retrieve the name of the method that writes the value.
+	 * @return The method name.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Retrieve the descriptor of the method that writes the value.
+	 * @return The method descriptor.
+	 */
+	public String getDescriptor() {
+		return descriptor;
+	}
+	
+	public Encoding getEncoding() {
+		return encoding;
+	}
+	
+	/**
+	 * Determine if the field is passed to the write method as is.
+	 * <p>
+	 * Otherwise the written value is computed from the field, such as the ordinal of an enum or the length of an array.
+	 * @return TRUE if it is, FALSE otherwise.
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+	
+	@Override
+	public String toString() {
+		return encoding + (direct ? "" : "*") + " (" + owner.substring(owner.lastIndexOf('/') + 1) + "." + name + descriptor + ")";
+	}
+}
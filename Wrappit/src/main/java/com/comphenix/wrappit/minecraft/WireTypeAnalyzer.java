@@ -0,0 +1,383 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.minecraft;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+import org.objectweb.asm.tree.analysis.Value;
+
+import com.comphenix.wrappit.minecraft.CodeClass.FieldWrite;
+import com.comphenix.wrappit.minecraft.WireType.Encoding;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Finds the fields written by a write packet method, along with the call that writes each of them.
+ * <p>
+ * Values are followed through the operand stack and local variables, so a field is found even if it is 
+ * converted before it is written, or if several fields are written on the same line.
+ */
+class WireTypeAnalyzer implements Opcodes {
+	// How far back a value is followed
+	private static final int MAX_DEPTH = 32;
+	
+	private static final String BYTE_BUF = "io/netty/buffer/ByteBuf";
+	
+	private final String className;
+	private final String serializerClass;
+	
+	// Encodings of the packet serializer, by method name and parameter types - obfuscated names are those of 1.15
+	private final Map<String, Encoding> encodings;
+	
+	private final String methodName;
+	private final String methodDesc;
+	
+	private InsnList instructions;
+	private Frame[] frames;
+	private boolean straightLine;
+	
+	/**
+	 * Construct an analyzer for the write packet method of a class.
+	 * @param className - internal name of the class.
+	 * @param serializerClass - internal name of the packet serializer.
+	 * @param methodName - name of the write packet method.
+	 * @param methodDesc - descriptor of the write packet method.
+	 */
+	public WireTypeAnalyzer(String className, String serializerClass, String methodName, String methodDesc) {
+		this.className = className;
+		this.serializerClass = serializerClass;
+		this.methodName = methodName;
+		this.methodDesc = methodDesc;
+		
+		String minecraftPackage = serializerClass.substring(0, serializerClass.lastIndexOf('/') + 1);
+		
+		this.encodings = ImmutableMap.<String, Encoding>builder().
+			put("d(I)", Encoding.VAR_INT).
+			put("b(J)", Encoding.VAR_LONG).
+			put("writeBoolean(Z)", Encoding.BOOLEAN).
+			put("writeByte(I)", Encoding.BYTE).
+			put("writeShort(I)", Encoding.SHORT).
+			put("writeInt(I)", Encoding.INT).
+			put("writeLong(J)", Encoding.LONG).
+			put("writeFloat(F)", Encoding.FLOAT).
+			put("writeDouble(D)", Encoding.DOUBLE).
+			put("a(Ljava/lang/String;)", Encoding.STRING).
+			put("a(Ljava/lang/String;I)", Encoding.STRING).
+			put("a(Ljava/util/UUID;)", Encoding.UUID).
+			put("a(L" + minecraftPackage + "BlockPosition;)", Encoding.BLOCK_POSITION).
+			put("a(Ljava/lang/Enum;)", Encoding.ENUM).
+			put("a([B)", Encoding.BYTE_ARRAY).
+			put("a([I)", Encoding.VAR_INT_ARRAY).
+			put("writeBytes([B)", Encoding.RAW_BYTES).
+			build();
+	}
+	
+	/**
+	 * Find the fields written by the given write packet method, in the order they are written.
+	 * @param method - the write packet method.
+	 * @return The written fields.
+	 * @throws AnalyzerException If the method could not be analyzed.
+	 */
+	public List<FieldWrite> analyze(MethodNode method) throws AnalyzerException {
+		List<FieldWrite> result = new ArrayList<>();
+		
+		instructions = method.instructions;
+		frames = new Analyzer(new SourceInterpreter()).analyze(className, method);
+		straightLine = true;
+		
+		boolean[] conditional = getConditional();
+		
+		for (int i = 0; i < instructions.size(); i++) {
+			AbstractInsnNode insn = instructions.get(i);
+			
+			// Skip unreachable code too
+			if (!(insn instanceof MethodInsnNode) || frames[i] == null)
+				continue;
+			MethodInsnNode call = (MethodInsnNode) insn;
+			
+			if (call.getOpcode() == INVOKESPECIAL && call.name.equals(methodName) && call.desc.equals(methodDesc)) {
+				// The super method writes its fields at this point
+				result.add(FieldWrite.SUPER_METHOD);
+				straightLine &= !conditional[i];
+				continue;
+			}
+			
+			Frame frame = frames[i];
+			int count = getOperandCount(call);
+			int first = frame.getStackSize() - count;
+			boolean writes = false;
+			
+			// Only calls that are given the serializer write anything
+			for (int k = first; k < frame.getStackSize(); k++) {
+				writes |= isSerializer(frame.getStack(k));
+			}
+			if (!writes)
+				continue;
+			
+			// Field name, and whether or not it is written as is
+			Map<String, Boolean> fields = new LinkedHashMap<>();
+			Set<AbstractInsnNode> visited = new HashSet<>();
+			
+			for (int k = first; k < frame.getStackSize(); k++) {
+				Value value = frame.getStack(k);
+				
+				if (!isSerializer(value)) {
+					for (AbstractInsnNode source : getSources(value))
+						trace(source, true, 0, visited, fields);
+				}
+			}
+			
+			Encoding encoding = getEncoding(call);
+			
+			for (Map.Entry<String, Boolean> entry : fields.entrySet()) {
+				result.add(new FieldWrite(entry.getKey(), new WireType(call.owner, call.name, call.desc, encoding, entry.getValue())));
+			}
+			
+			// Otherwise some bytes are not described by the write order, or described more than once
+			if (conditional[i] || fields.size() != 1 || !fields.values().iterator().next())
+				straightLine = false;
+		}
+		return result;
+	}
+	
+	/**
+	 * Determine if the last analyzed method writes one field at a time.
+	 * <p>
+	 * That is, every call that is given the serializer writes exactly one field as is, and none of them are
+	 * made in a branch or a loop. Only then does the write order describe every byte of the packet.
+	 * @return TRUE if it does, FALSE otherwise.
+	 */
+	public boolean isStraightLine() {
+		return straightLine;
+	}
+	
+	/**
+	 * Find the instructions that may be skipped or repeated, as they are covered by a jump or a switch.
+	 * @return Whether or not each instruction may be skipped or repeated, by index.
+	 */
+	private boolean[] getConditional() {
+		boolean[] result = new boolean[instructions.size()];
+		
+		for (int i = 0; i < instructions.size(); i++) {
+			AbstractInsnNode insn = instructions.get(i);
+			List<LabelNode> targets = new ArrayList<>();
+			
+			if (insn instanceof JumpInsnNode) {
+				targets.add(((JumpInsnNode) insn).label);
+			} else if (insn instanceof TableSwitchInsnNode) {
+				targets.add(((TableSwitchInsnNode) insn).dflt);
+				targets.addAll(getLabels(((TableSwitchInsnNode) insn).labels));
+			} else if (insn instanceof LookupSwitchInsnNode) {
+				targets.add(((LookupSwitchInsnNode) insn).dflt);
+				targets.addAll(getLabels(((LookupSwitchInsnNode) insn).labels));
+			}
+			
+			for (LabelNode target : targets) {
+				int index = instructions.indexOf(target);
+				
+				// Jumping forward skips the instructions in between, jumping back repeats them
+				if (index > i)
+					Arrays.fill(result, i + 1, index, true);
+				else
+					Arrays.fill(result, index, i + 1, true);
+			}
+		}
+		return result;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static List<LabelNode> getLabels(List<?> labels) {
+		// The ASM 5 artifacts are compiled without generics
+		return (List<LabelNode>) labels;
+	}
+	
+	/**
+	 * Find the fields of this class the value produced by an instruction is computed from.
+	 * @param insn - the instruction.
+	 * @param direct - whether or not the value has been passed on unchanged so far.
+	 * @param depth - the number of instructions followed so far.
+	 * @param visited - instructions that have already been followed.
+	 * @param fields - the fields that were found.
+	 */
+	private void trace(AbstractInsnNode insn, boolean direct, int depth, Set<AbstractInsnNode> visited, Map<String, Boolean> fields) {
+		if (depth > MAX_DEPTH || !visited.add(insn))
+			return;
+		int opcode = insn.getOpcode();
+		
+		if (opcode == GETFIELD && ((FieldInsnNode) insn).owner.equals(className)) {
+			String name = ((FieldInsnNode) insn).name;
+			
+			// Only direct if every path is direct
+			Boolean previous = fields.get(name);
+			fields.put(name, previous != null ? previous && direct : direct);
+			
+		} else if (opcode >= ILOAD && opcode <= ALOAD) {
+			// Follow the instructions that stored the local variable
+			Value local = frames[instructions.indexOf(insn)].getLocal(((VarInsnNode) insn).var);
+			
+			for (AbstractInsnNode store : getSources(local))
+				trace(store, direct, depth + 1, visited, fields);
+			
+		} else if (opcode == ICONST_0 || opcode == ICONST_1) {
+			// Booleans such as "field != null" are computed by a branch
+			AbstractInsnNode previous = getPrevious(insn);
+			
+			if (previous != null && previous.getType() == AbstractInsnNode.JUMP_INSN && previous.getOpcode() != GOTO)
+				traceOperands(previous, false, depth, visited, fields);
+			
+		} else {
+			// Stores, casts and duplicates pass the value on as is
+			boolean unchanged = (opcode >= ISTORE && opcode <= ASTORE) || opcode == CHECKCAST || opcode == DUP;
+			traceOperands(insn, unchanged && direct, depth, visited, fields);
+		}
+	}
+	
+	private void traceOperands(AbstractInsnNode insn, boolean direct, int depth, Set<AbstractInsnNode> visited, Map<String, Boolean> fields) {
+		Frame frame = frames[instructions.indexOf(insn)];
+		int count = getOperandCount(insn);
+		
+		if (frame == null)
+			return;
+		
+		for (int k = frame.getStackSize() - count; k < frame.getStackSize(); k++) {
+			for (AbstractInsnNode source : getSources(frame.getStack(k)))
+				trace(source, direct, depth + 1, visited, fields);
+		}
+	}
+	
+	/**
+	 * Retrieve the instruction before the given instruction, skipping labels and line numbers.
+	 * @param insn - the instruction.
+	 * @return The previous instruction, or NULL if this is the first.
+	 */
+	private static AbstractInsnNode getPrevious(AbstractInsnNode insn) {
+		AbstractInsnNode previous = insn.getPrevious();
+		
+		while (previous != null && previous.getOpcode() < 0)
+			previous = previous.getPrevious();
+		return previous;
+	}
+	
+	/**
+	 * Determine if a value is the packet serializer.
+	 * @param value - the value.
+	 * @return TRUE if it is, FALSE otherwise.
+	 */
+	private boolean isSerializer(Value value) {
+		for (AbstractInsnNode source : getSources(value)) {
+			// The parameter of the write packet method
+			if (source.getOpcode() == ALOAD && ((VarInsnNode) source).var == 1)
+				return true;
+			
+			// Or a chained call
+			if (source instanceof MethodInsnNode) {
+				Type returnType = Type.getReturnType(((MethodInsnNode) source).desc);
+				
+				if (returnType.getSort() == Type.OBJECT && 
+				   (returnType.getInternalName().equals(serializerClass) || returnType.getInternalName().equals(BYTE_BUF)))
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Retrieve the instructions that may have produced a value.
+	 * @param value - a value computed by the source interpreter.
+	 * @return The instructions.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Set<AbstractInsnNode> getSources(Value value) {
+		// The ASM 5 artifacts are compiled without generics
+		return ((SourceValue) value).insns;
+	}
+	
+	private Encoding getEncoding(MethodInsnNode call) {
+		if (call.owner.equals(serializerClass) || call.owner.equals(BYTE_BUF)) {
+			Encoding encoding = encodings.get(call.name + call.desc.substring(0, call.desc.indexOf(')') + 1));
+			
+			if (encoding != null)
+				return encoding;
+		}
+		return Encoding.OTHER;
+	}
+	
+	/**
+	 * Retrieve the number of values an instruction takes from the operand stack.
+	 * @param insn - the instruction.
+	 * @return The number of values, or 0 if it is not of interest.
+	 */
+	private static int getOperandCount(AbstractInsnNode insn) {
+		int opcode = insn.getOpcode();
+		
+		switch (insn.getType()) {
+			case AbstractInsnNode.METHOD_INSN:
+				return Type.getArgumentTypes(((MethodInsnNode) insn).desc).length + (opcode == INVOKESTATIC ? 0 : 1);
+			case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+				return Type.getArgumentTypes(((InvokeDynamicInsnNode) insn).desc).length;
+			case AbstractInsnNode.FIELD_INSN:
+				return opcode == GETFIELD || opcode == PUTSTATIC ? 1 : opcode == PUTFIELD ? 2 : 0;
+			case AbstractInsnNode.TYPE_INSN:
+				return opcode == NEW ? 0 : 1;
+			case AbstractInsnNode.VAR_INSN:
+				return opcode >= ISTORE && opcode <= ASTORE ? 1 : 0;
+			case AbstractInsnNode.JUMP_INSN:
+				if (opcode >= IF_ICMPEQ && opcode <= IF_ACMPNE)
+					return 2;
+				return opcode == GOTO || opcode == JSR ? 0 : 1;
+			case AbstractInsnNode.INSN:
+				if (opcode >= INEG && opcode <= DNEG)
+					return 1;
+				if ((opcode >= IALOAD && opcode <= SALOAD) || (opcode >= IADD && opcode <= LXOR) || (opcode >= LCMP && opcode <= DCMPG))
+					return 2;
+				if ((opcode >= I2L && opcode <= I2S) || opcode == ARRAYLENGTH || opcode == DUP)
+					return 1;
+				return 0;
+			default:
+				return 0;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.runtime;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.objectweb.asm.Type;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.protocol.events.PacketContainer;
+import com.comphenix.wrappit.BytecodeGenerator;
+import com.comphenix.wrappit.WrapperGenerator.Feature;
+import com.comphenix.wrappit.minecraft.CodePacketReader;
+import com.comphenix.wrappit.wiki.WikiPacketReader;
+
+/**
+ * Generates wrappers for the packets of the running server, so that Wrappit can be embedded in a plugin.
+ * <p>
+ * Each wrapper is read from the loaded packet classes with {@link CodePacketReader}, written as bytecode
+ * by {@link BytecodeGenerator} and defined by a dedicated class loader the first time it is requested.
+ * Accessors of fields that ProtocolLib would return as is read and write the field through a method handle,
+ * and every other accessor goes through ProtocolLib.
+ */
+public class RuntimeWrappers {
+	/**
+	 * Package of every wrapper generated at runtime, kept apart from the wrappers shipped with PacketWrapper.
+	 */
+	public static final String RUNTIME_PACKAGE = "com/comphenix/packetwrapper/runtime/";
+
+	private final BytecodeGenerator generator;
+	private final WrapperClassLoader loader;
+	
+	// Constructor of every defined wrapper, taking a packet container
+	private final ConcurrentMap<PacketType, MethodHandle> constructors = new ConcurrentHashMap<>();
+
+	/**
+	 * Construct a runtime generator that names accessors after the Minecraft fields.
+	 * @param abstractPacket - the AbstractPacket class of PacketWrapper, as loaded by the plugin.
+	 */
+	public RuntimeWrappers(Class<?> abstractPacket) {
+		this(abstractPacket, null);
+	}
+
+	/**
+	 * Construct a runtime generator.
+	 * @param abstractPacket - the AbstractPacket class of PacketWrapper, as loaded by the plugin.
+	 * @param wikiReader - a wiki reader to name accessors after the protocol wiki, or NULL.
+	 */
+	public RuntimeWrappers(Class<?> abstractPacket, WikiPacketReader wikiReader) {
+		this.generator = new BytecodeGenerator(new CodePacketReader(), wikiReader, EnumSet.of(Feature.DIRECT_ACCESSORS), 
+				RUNTIME_PACKAGE, Type.getInternalName(abstractPacket));
+		this.loader = new WrapperClassLoader(abstractPacket.getClassLoader());
+	}
+
+	/**
+	 * Retrieve the wrapper class of a given packet, generating it if necessary.
+	 * @param type - the packet type.
+	 * @return The wrapper class, a subclass of AbstractPacket.
+	 * @throws IOException If the packet class cannot be read.
+	 */
+	public Class<?> getWrapperClass(PacketType type) throws IOException {
+		return getConstructor(type).type().returnType();
+	}
+
+	/**
+	 * Wrap a packet using its generated wrapper.
+	 * @param packet - the packet to wrap.
+	 * @return The wrapper, an instance of AbstractPacket.
+	 * @throws IOException If the packet class cannot be read.
+	 */
+	public Object createWrapper(PacketContainer packet) throws IOException {
+		try {
+			return getConstructor(packet.getType()).invoke(packet);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException("Cannot wrap " + packet.getType(), e);
+		}
+	}
+
+	private MethodHandle getConstructor(PacketType type) throws IOException {
+		MethodHandle constructor = constructors.get(type);
+
+		if (constructor == null) {
+			// Only ever define a wrapper once
+			synchronized (loader) {
+				constructor = constructors.get(type);
+
+				if (constructor == null) {
+					Class<?> wrapperClass = loader.defineWrapper(generator.getBinaryName(type), generator.generateClass(type));
+
+					try {
+						constructor = MethodHandles.publicLookup().findConstructor(wrapperClass,
+								MethodType.methodType(void.class, PacketContainer.class));
+					} catch (ReflectiveOperationException e) {
+						throw new IllegalStateException("Generated wrapper " + wrapperClass + " has no packet constructor.", e);
+					}
+					constructors.put(type, constructor);
+				}
+			}
+		}
+		return constructor;
+	}
+
+	/**
+	 * Defines the generated wrappers, with the class loader of PacketWrapper as parent.
+	 */
+	private static class WrapperClassLoader extends ClassLoader {
+		public WrapperClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		public Class<?> defineWrapper(String name, byte[] data) {
+			return defineClass(name, data, 0, data.length);
+		}
+	}
+}
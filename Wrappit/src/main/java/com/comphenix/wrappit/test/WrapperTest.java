@@ -28,6 +28,7 @@ import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.jar.JarEntry;
@@ -73,7 +74,7 @@ public class WrapperTest {
 			while (entries.hasMoreElements()) {
 				JarEntry entry = entries.nextElement();
 				String className = entry.getName();
-				if (className.endsWith(".class") && ! className.contains("$") && ! className.contains("PacketWrapper")) {
+				if (className.endsWith(".class") && isTestable(className)) {
 					className = className.replaceAll("/", ".");
 					className = className.replaceAll(".class", "");
 					classes.add(className);
@@ -82,23 +83,47 @@ public class WrapperTest {
 
 			System.out.println("Successfully determined classes.");
 
-			System.out.println("Initializing fake server...");
-			WrapperTest.init();
-
 			System.out.println("Loading classes...");
 			URL[] urls = { new URL("jar:file:" + packetWrapper + "!/") };
 			URLClassLoader loader = URLClassLoader.newInstance(urls);
 
+			List<Class<?>> loaded = new ArrayList<>();
+			for (String name : classes) {
+				try {
+					loaded.add(loader.loadClass(name));
+				} catch (Throwable ex) {
+					System.err.println("Failed to load " + name + ":");
+					ex.printStackTrace();
+				}
+			}
+
+			test(loaded);
+		} catch (Throwable ex) {
+			System.err.println("Failed to test PacketWrapper:");
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Test wrapper classes that have already been loaded, such as classes compiled in memory.
+	 * @param classes - the wrapper classes.
+	 */
+	public static void test(Collection<Class<?>> classes) {
+		try {
+			init();
+
 			List<String> classNames = new ArrayList<>();
 			List<String> failures = new ArrayList<>();
-			for (String name : classes) {
-				if (name.endsWith("WrapperPlayServerCombatEvent")) {
+			for (Class<?> clazz : classes) {
+				if (! isTestable(clazz.getName())) {
+					continue;
+				}
+				if (clazz.getName().endsWith("WrapperPlayServerCombatEvent")) {
 					// TODO Look into effectively testing this wrapper
 					continue;
 				}
 
 				try {
-					Class<?> clazz = loader.loadClass(name);
 					classNames.add(clazz.getSimpleName());
 
 					System.out.println("Testing " + clazz.getName() + "...");
@@ -137,7 +162,7 @@ public class WrapperTest {
 					}
 				} catch (NoSuchMethodException ex) {
 				} catch (Throwable ex) {
-					System.err.println("Failed to test " + name + ":");
+					System.err.println("Failed to test " + clazz.getName() + ":");
 					ex.printStackTrace();
 				}
 			}
@@ -154,8 +179,7 @@ public class WrapperTest {
 			System.out.println("Ensuring wrappers for all packet types exist...");
 
 			for (PacketType type : PacketType.values()) {
-				String className = "Wrapper" + Wrappit.getCamelCase(type.getProtocol()) + Wrappit.getCamelCase(type.getSender())
-						+ Wrappit.getCamelCase(type.name());
+				String className = Wrappit.getClassName(type);
 				if (! classNames.contains(className)) {
 					if (type.isDeprecated()) {
 						System.out.println("Wrapper does not exist for deprecated type: " + type);
@@ -181,6 +205,15 @@ public class WrapperTest {
 		}
 	}
 
+	/**
+	 * Determine if a class should be tested, skipping inner classes and the plugin itself.
+	 * @param className - the binary name of the class.
+	 * @return TRUE if it should, FALSE otherwise.
+	 */
+	private static boolean isTestable(String className) {
+		return ! className.contains("$") && ! className.contains("PacketWrapper");
+	}
+
 	private static void init() throws Throwable {
 		if (!initialized) {
 			// Denote that we're done
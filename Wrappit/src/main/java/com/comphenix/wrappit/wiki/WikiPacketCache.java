@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.wiki;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.comphenix.protocol.PacketType;
+
+/**
+ * A compact binary cache of parsed wiki packets, keyed by a hash of the document they were parsed from.
+ */
+class WikiPacketCache {
+	private static final int MAGIC = 0x57494B49;
+	private static final int VERSION = 1;
+	
+	private final File file;
+	
+	public WikiPacketCache(File file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Load every cached packet.
+	 * @param documentHash - hash of the current document, or NULL to accept a cache of any document.
+	 * @return The cached packets, or NULL if the cache is missing or belongs to a different document.
+	 * @throws IOException If the cache cannot be read.
+	 */
+	public Map<PacketType, WikiPacketInfo> load(String documentHash) throws IOException {
+		if (!file.exists())
+			return null;
+		
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION)
+				return null;
+			
+			// Always read, as the packets follow it
+			String cachedHash = input.readUTF();
+			
+			if (documentHash != null && !documentHash.equals(cachedHash))
+				return null;
+			
+			Map<String, PacketType> types = getTypesByKey();
+			Map<PacketType, WikiPacketInfo> result = new HashMap<>();
+			int packetCount = input.readInt();
+			
+			for (int i = 0; i < packetCount; i++) {
+				String key = input.readUTF();
+				List<WikiPacketField> fields = new ArrayList<>();
+				int fieldCount = input.readInt();
+				
+				for (int j = 0; j < fieldCount; j++) {
+					fields.add(new WikiPacketField(readString(input), readString(input), readString(input)));
+				}
+				
+				// Skip packets this version of ProtocolLib does not know about
+				PacketType type = types.get(key);
+				if (type != null) {
+					result.put(type, new WikiPacketInfo(type, fields));
+				}
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Replace the cache with the given packets.
+	 * @param documentHash - hash of the document the packets were parsed from.
+	 * @param packets - the packets.
+	 * @throws IOException If the cache cannot be written.
+	 */
+	public void save(String documentHash, Map<PacketType, WikiPacketInfo> packets) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeUTF(documentHash);
+			output.writeInt(packets.size());
+			
+			for (WikiPacketInfo info : packets.values()) {
+				List<WikiPacketField> fields = new ArrayList<>();
+				
+				for (WikiPacketField field : info.getPacketFields()) {
+					fields.add(field);
+				}
+				output.writeUTF(getKey(info.getType()));
+				output.writeInt(fields.size());
+				
+				for (WikiPacketField field : fields) {
+					writeString(output, field.getFieldName());
+					writeString(output, field.getFieldType());
+					writeString(output, field.getNotes());
+				}
+			}
+		}
+	}
+	
+	private Map<String, PacketType> getTypesByKey() {
+		Map<String, PacketType> result = new HashMap<>();
+		
+		for (PacketType type : PacketType.values()) {
+			result.put(getKey(type), type);
+		}
+		return result;
+	}
+	
+	/**
+	 * Retrieve a key that identifies a packet type across ProtocolLib versions.
+	 */
+	private String getKey(PacketType type) {
+		return type.getProtocol() + "/" + type.getSender() + "/" + type.name();
+	}
+	
+	private String readString(DataInputStream input) throws IOException {
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+	
+	private void writeString(DataOutputStream output, String value) throws IOException {
+		output.writeBoolean(value != null);
+		
+		if (value != null)
+			output.writeUTF(value);
+	}
+}
@@ -24,11 +24,25 @@ package com.comphenix.wrappit.wiki;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -38,6 +52,12 @@ import org.jsoup.select.Elements;
 import com.comphenix.protocol.PacketType;
 import com.comphenix.protocol.PacketType.Protocol;
 import com.comphenix.protocol.PacketType.Sender;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
 
 /**
  * Retrieve valuable information from the Minecraft Protocol Wiki.
@@ -47,49 +67,223 @@ import com.comphenix.protocol.PacketType.Sender;
 public class WikiPacketReader {
 	public static final String STANDARD_URL = "https://www.wiki.vg/Protocol";
 	
-	// Stored packet information
-	private Map<PacketType, WikiPacketInfo> packets;
+	/**
+	 * The ways the protocol page can be parsed.
+	 */
+	public enum ParseMode {
+		/**
+		 * Build the DOM of the entire page before reading the packet tables.
+		 */
+		DOCUMENT,
+		
+		/**
+		 * Read the page as a stream, keeping only the current heading or table in memory.
+		 * <p>
+		 * The page is assumed to be encoded in UTF-8.
+		 */
+		STREAMING,
+		
+		/**
+		 * Build the DOM of the entire page, and read the packet tables concurrently.
+		 */
+		PARALLEL,
+		
+		/**
+		 * Read the page as a stream, but only find the table of every packet.
+		 * <p>
+		 * The HTML of each table is kept as is, and only parsed the first time its packet is requested. 
+		 * The packets are not saved to the cache, as that would require reading every table.
+		 */
+		LAZY;
+	}
+	
+	// Number of threads that read the tables in parallel mode
+	private final int threads;
+	
+	// Stored packet information - never modified after construction, so it can be shared between threads
+	private final Map<PacketType, WikiPacketInfo> packets;
 	
 	public WikiPacketReader() throws IOException {
 		this(STANDARD_URL);
 	}
 	
 	public WikiPacketReader(String url) throws IOException {
-		packets = loadFromDocument(Jsoup.connect(url).get());
+		this(url, ParseMode.DOCUMENT, 1);
+	}
+	
+	/**
+	 * Read the wiki from a given URL.
+	 * @param url - the URL of the protocol page.
+	 * @param mode - how to parse the page.
+	 * @param threads - number of threads used to read the tables in parallel mode.
+	 * @throws IOException If the page cannot be downloaded.
+	 */
+	public WikiPacketReader(String url, ParseMode mode, int threads) throws IOException {
+		this.threads = threads;
+		this.packets = load(ByteSource.wrap(download(url)), url, mode);
 	}
 	
 	public WikiPacketReader(File file) throws IOException {
-		packets = loadFromDocument(Jsoup.parse(file, null));
+		this(file, ParseMode.DOCUMENT, 1);
+	}
+	
+	/**
+	 * Read the wiki from a saved copy of the protocol page.
+	 * @param file - the saved page.
+	 * @param mode - how to parse the page.
+	 * @param threads - number of threads used to read the tables in parallel mode.
+	 * @throws IOException If the page cannot be read.
+	 */
+	public WikiPacketReader(File file, ParseMode mode, int threads) throws IOException {
+		this.threads = threads;
+		this.packets = load(Files.asByteSource(file), file.getAbsolutePath(), mode);
+	}
+	
+	public WikiPacketReader(String url, File cacheFile) throws IOException {
+		this(url, cacheFile, ParseMode.DOCUMENT, 1);
+	}
+	
+	/**
+	 * Read the wiki from a given URL, reusing the packets in a cache file if the page has not changed.
+	 * <p>
+	 * If the page cannot be downloaded, the packets of the last cached page are used instead.
+	 * @param url - the URL of the protocol page.
+	 * @param cacheFile - the cache file.
+	 * @param mode - how to parse the page if it is not cached.
+	 * @param threads - number of threads used to read the tables in parallel mode.
+	 * @throws IOException If the page cannot be downloaded and there is no cache.
+	 */
+	public WikiPacketReader(String url, File cacheFile, ParseMode mode, int threads) throws IOException {
+		this.threads = threads;
+		this.packets = loadFromUrl(url, new WikiPacketCache(cacheFile), mode);
 	}
 	
-	private Map<PacketType, WikiPacketInfo> loadFromDocument(Document doc) {
-		Map<PacketType, WikiPacketInfo> result = new HashMap<PacketType, WikiPacketInfo>();
+	public WikiPacketReader(File file, File cacheFile) throws IOException {
+		this(file, cacheFile, ParseMode.DOCUMENT, 1);
+	}
+	
+	/**
+	 * Read the wiki from a saved copy of the protocol page, reusing the packets in a cache file if the page has not changed.
+	 * @param file - the saved page.
+	 * @param cacheFile - the cache file.
+	 * @param mode - how to parse the page if it is not cached.
+	 * @param threads - number of threads used to read the tables in parallel mode.
+	 * @throws IOException If the page cannot be read.
+	 */
+	public WikiPacketReader(File file, File cacheFile, ParseMode mode, int threads) throws IOException {
+		this.threads = threads;
+		this.packets = loadCached(Files.asByteSource(file), file.getAbsolutePath(), new WikiPacketCache(cacheFile), mode);
+	}
+	
+	private static byte[] download(String url) throws IOException {
+		return Jsoup.connect(url).maxBodySize(0).execute().bodyAsBytes();
+	}
+	
+	private Map<PacketType, WikiPacketInfo> loadFromUrl(String url, WikiPacketCache cache, ParseMode mode) throws IOException {
+		byte[] document;
+		
+		try {
+			document = download(url);
+		} catch (IOException e) {
+			Map<PacketType, WikiPacketInfo> cached = cache.load(null);
+			
+			if (cached == null)
+				throw e;
+			System.err.println("Cannot download " + url + ", using the cached wiki instead: " + e);
+			return Collections.unmodifiableMap(cached);
+		}
+		return loadCached(ByteSource.wrap(document), url, cache, mode);
+	}
+	
+	private Map<PacketType, WikiPacketInfo> loadCached(ByteSource document, String baseUri, WikiPacketCache cache, ParseMode mode) throws IOException {
+		String documentHash = document.hash(Hashing.sha256()).toString();
+		Map<PacketType, WikiPacketInfo> cached = cache.load(documentHash);
+		
+		if (cached != null)
+			return Collections.unmodifiableMap(cached);
+		
+		Map<PacketType, WikiPacketInfo> result = load(document, baseUri, mode);
+		
+		if (mode != ParseMode.LAZY)
+			cache.save(documentHash, result);
+		return result;
+	}
+	
+	private Map<PacketType, WikiPacketInfo> load(ByteSource document, String baseUri, ParseMode mode) throws IOException {
+		switch (mode) {
+			case DOCUMENT:
+				try (InputStream input = document.openBufferedStream()) {
+					return loadFromDocument(Jsoup.parse(input, null, baseUri), new SectionTracker());
+				}
+			case PARALLEL:
+				try (InputStream input = document.openBufferedStream()) {
+					return loadFromDocument(Jsoup.parse(input, null, baseUri), new ParallelSectionTracker());
+				}
+			case STREAMING:
+				try (Reader reader = document.asCharSource(StandardCharsets.UTF_8).openBufferedStream()) {
+					return loadFromStream(reader, new SectionTracker());
+				}
+			case LAZY:
+				try (Reader reader = document.asCharSource(StandardCharsets.UTF_8).openBufferedStream()) {
+					LazySectionTracker tracker = new LazySectionTracker();
+					
+					new WikiStreamScanner(reader).scanFragments(tracker::visit);
+					return tracker.finish();
+				}
+			default:
+				throw new IllegalArgumentException("Unknown parse mode " + mode);
+		}
+	}
+	
+	private Map<PacketType, WikiPacketInfo> loadFromDocument(Document doc, SectionTracker tracker) throws IOException {
 		Element bodyContent = doc.getElementById("mw-content-text");
-
 		Element parserOutput = bodyContent.getElementsByClass("mw-parser-output").get(0);
 		
+		for (Element element : parserOutput.children()) {
+			tracker.visit(element);
+		}
+		return tracker.finish();
+	}
+	
+	private Map<PacketType, WikiPacketInfo> loadFromStream(Reader reader, SectionTracker tracker) throws IOException {
+		new WikiStreamScanner(reader).scan(tracker::visit);
+		return tracker.finish();
+	}
+	
+	/**
+	 * Reads the packet tables of the page, given its top-level elements in document order.
+	 */
+	private class SectionTracker {
+		protected final Map<PacketType, WikiPacketInfo> result;
+		
 		// Current protocol and sender
-		Protocol protocol = null;
-		Sender sender = null;
+		private Protocol protocol;
+		private Sender sender;
 		
-		for (Element element : parserOutput.children()) {
+		public SectionTracker() {
+			this(new HashMap<PacketType, WikiPacketInfo>());
+		}
+		
+		protected SectionTracker(Map<PacketType, WikiPacketInfo> result) {
+			this.result = result;
+		}
+		
+		public void visit(Element element) {
 			String tag = element.tagName();
-			System.out.println(element.nodeName());
 			
 			// Protocol candidate
 			if (tag.equals("h2")) {
+				String text = getHeadline(element);
+				
 				try {
-					String text = getEnumText(element.select(".mw-headline").first());
-					System.out.println("h2 text=" + text);
-					protocol = Protocol.valueOf(text);
-					
+					protocol = text != null ? Protocol.valueOf(text) : null;
 				} catch (IllegalArgumentException e) {
 					// We are in a section that is not a protocol
 					protocol = null;
 				}
 			// Sender candidates
 			} else if (tag.equals("h3")) {
-				String text = getEnumText(element.select(".mw-headline").first());
+				String text = getHeadline(element);
 				
 				if ("SERVERBOUND".equals(text)) {
 					sender = Sender.CLIENT;
@@ -97,7 +291,7 @@ public class WikiPacketReader {
 					sender = Sender.SERVER;
 				}
 			// Table candidate
-			} else if (protocol != null && sender != null && tag.equals("table")) {
+			} else if (isPacketSection() && tag.equals("table")) {
 				int columnPacketId = getPacketIDColumn(element);
 				
 				// We have a real packet table
@@ -111,14 +305,180 @@ public class WikiPacketReader {
 					try {
 						@SuppressWarnings("deprecation") // Hopefully this isn't an issue
 						PacketType type = PacketType.findCurrent(protocol, sender, packetId);
-						result.put(type, processTable(type, element));
+						addTable(type, element);
 					} catch (IllegalArgumentException ex) {
 						System.err.println("Could not find PacketType[id=" + packetId + ", protocol=" + protocol + ", sender=" + sender + "]");
 					}
 				}
 			}
 		}
-		return result;
+		
+		protected void addTable(PacketType type, Element table) {
+			result.put(type, processTable(type, table));
+		}
+		
+		/**
+		 * Determine if the tables that follow may describe packets.
+		 * @return TRUE if they may, FALSE otherwise.
+		 */
+		protected boolean isPacketSection() {
+			return protocol != null && sender != null;
+		}
+		
+		/**
+		 * Retrieve the packets of every table that has been visited.
+		 * @return The packets.
+		 * @throws IOException If a table could not be read.
+		 */
+		public Map<PacketType, WikiPacketInfo> finish() throws IOException {
+			return Collections.unmodifiableMap(result);
+		}
+	}
+	
+	/**
+	 * Assigns a packet to every table in document order, then reads the tables concurrently on the configured number of threads.
+	 * <p>
+	 * Most packets are in the play protocol, so the work is split per table rather than per section.
+	 */
+	private class ParallelSectionTracker extends SectionTracker {
+		// Later tables replace earlier tables of the same packet, as in the sequential tracker
+		private final Map<PacketType, Element> tables = new LinkedHashMap<PacketType, Element>();
+		
+		public ParallelSectionTracker() {
+			super(new ConcurrentHashMap<PacketType, WikiPacketInfo>());
+		}
+		
+		@Override
+		protected void addTable(PacketType type, Element table) {
+			tables.put(type, table);
+		}
+		
+		@Override
+		public Map<PacketType, WikiPacketInfo> finish() throws IOException {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			List<Future<?>> tasks = new ArrayList<Future<?>>();
+			
+			try {
+				for (Map.Entry<PacketType, Element> entry : tables.entrySet()) {
+					PacketType type = entry.getKey();
+					Element table = entry.getValue();
+					
+					tasks.add(executor.submit(() -> result.put(type, processTable(type, table))));
+				}
+				for (Future<?> task : tasks) {
+					task.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading the packet tables.");
+			} catch (ExecutionException e) {
+				Throwables.throwIfUnchecked(e.getCause());
+				throw new IOException("Cannot read packet table.", e.getCause());
+			} finally {
+				executor.shutdown();
+			}
+			return super.finish();
+		}
+	}
+	
+	/**
+	 * Finds the table of every packet from the HTML of each element, keeping the HTML of every table for later.
+	 * <p>
+	 * Only the first two rows of a table are parsed, as they hold the packet ID.
+	 */
+	private class LazySectionTracker extends SectionTracker {
+		private final Map<PacketType, String> tables = new LinkedHashMap<PacketType, String>();
+		
+		// The table that is being visited
+		private String tableHtml;
+		
+		public void visit(String tag, String html) {
+			Element element;
+			
+			if (tag.equals("table")) {
+				if (!isPacketSection())
+					return;
+				tableHtml = html;
+				element = WikiStreamScanner.parseElement(getHead(html));
+			} else {
+				element = WikiStreamScanner.parseElement(html);
+			}
+			if (element != null)
+				visit(element);
+		}
+		
+		/**
+		 * Retrieve the HTML of the header row and the first row of a table, which may omit the end tags.
+		 * @param html - the HTML of the table.
+		 * @return The HTML of the first two rows.
+		 */
+		private String getHead(String html) {
+			int end = html.indexOf("</tr>");
+			
+			if (end >= 0)
+				end = html.indexOf("</tr>", end + 1);
+			return end >= 0 ? html.substring(0, end) : html;
+		}
+		
+		@Override
+		protected void addTable(PacketType type, Element table) {
+			tables.put(type, tableHtml);
+		}
+		
+		@Override
+		public Map<PacketType, WikiPacketInfo> finish() {
+			return new LazyPacketMap(tables);
+		}
+	}
+	
+	/**
+	 * The packets of the lazy mode, which parses the table of a packet the first time it is requested.
+	 */
+	private class LazyPacketMap extends AbstractMap<PacketType, WikiPacketInfo> {
+		private final Map<PacketType, String> tables;
+		private final ConcurrentMap<PacketType, WikiPacketInfo> processed = new ConcurrentHashMap<PacketType, WikiPacketInfo>();
+		
+		public LazyPacketMap(Map<PacketType, String> tables) {
+			this.tables = Collections.unmodifiableMap(tables);
+		}
+		
+		@Override
+		public WikiPacketInfo get(Object key) {
+			String html = tables.get(key);
+			
+			if (html == null)
+				return null;
+			return processed.computeIfAbsent((PacketType) key, type -> processTable(type, WikiStreamScanner.parseElement(html)));
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return tables.containsKey(key);
+		}
+		
+		@Override
+		public Set<Map.Entry<PacketType, WikiPacketInfo>> entrySet() {
+			return Maps.asMap(tables.keySet(), this::get).entrySet();
+		}
+		
+		/**
+		 * Retrieve the HTML of the table of a packet, without parsing it.
+		 * @param type - the packet.
+		 * @return The HTML, or NULL if not found.
+		 */
+		public String getTable(PacketType type) {
+			return tables.get(type);
+		}
+	}
+	
+	/**
+	 * Retrieve the enum text of the headline of a section heading.
+	 * @param heading - the heading.
+	 * @return The text, or NULL if this heading has no headline.
+	 */
+	private String getHeadline(Element heading) {
+		Element headline = heading.select(".mw-headline").first();
+		return headline != null ? getEnumText(headline) : null;
 	}
 	
 	private WikiPacketInfo processTable(PacketType type, Element table) {
@@ -193,4 +553,34 @@ public class WikiPacketReader {
 		else
 			throw new IOException("Packet " + type + " cannot be found on the wiki.");
 	}
+	
+	/**
+	 * Compute a hash of the table describing a packet.
+	 * <p>
+	 * In lazy mode the HTML of the table is hashed instead of its cells, so switching modes changes every hash.
+	 * @param type - the packet to hash.
+	 * @return The hexadecimal hash.
+	 * @throws IOException If this packet cannot be found on the Wiki.
+	 */
+	public String getTableHash(PacketType type) throws IOException {
+		Hasher hasher = Hashing.sha256().newHasher();
+		
+		// Hash lazy tables as they are, rather than parse every table
+		if (packets instanceof LazyPacketMap) {
+			String html = ((LazyPacketMap) packets).getTable(type);
+			
+			if (html == null)
+				throw new IOException("Packet " + type + " cannot be found on the wiki.");
+			return hasher.putString(html, StandardCharsets.UTF_8).hash().toString();
+		}
+		
+		for (WikiPacketField field : readPacket(type).getPacketFields()) {
+			// Separate every cell, so that moving text between cells changes the hash
+			for (String cell : new String[] { field.getFieldName(), field.getFieldType(), field.getNotes() }) {
+				String text = String.valueOf(cell);
+				hasher.putInt(text.length()).putString(text, StandardCharsets.UTF_8);
+			}
+		}
+		return hasher.hash().toString();
+	}
 }
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.wiki;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Extracts the section headings and tables of the protocol page without building its DOM.
+ * <p>
+ * Only the element that is currently being read is kept in memory. It is passed on once the matching
+ * end tag has been found, so the memory use does not grow with the size of the page.
+ */
+class WikiStreamScanner {
+	// Elements passed on to the visitor
+	private static final ImmutableSet<String> CAPTURED_TAGS = ImmutableSet.of("h2", "h3", "table");
+	
+	// Elements before the page content are skipped
+	private static final String CONTENT_CLASS = "mw-parser-output";
+	
+	private final Reader reader;
+	
+	// The tag that is currently being read, without the angle brackets
+	private final StringBuilder tag = new StringBuilder();
+	
+	public WikiStreamScanner(Reader reader) {
+		this.reader = reader;
+	}
+	
+	/**
+	 * Read the rest of the page, passing every heading and top-level table to the given visitor in document order.
+	 * @param visitor - the visitor.
+	 * @throws IOException If the page cannot be read.
+	 */
+	public void scan(Consumer<Element> visitor) throws IOException {
+		scanFragments((name, html) -> {
+			Element element = parseElement(html);
+			
+			if (element != null)
+				visitor.accept(element);
+		});
+	}
+	
+	/**
+	 * Read the rest of the page, passing the HTML of every heading and top-level table to the given visitor in document order.
+	 * <p>
+	 * The HTML is not parsed, so the visitor decides which fragments are worth parsing.
+	 * @param visitor - the visitor, given the lower case tag name and the HTML of each element.
+	 * @throws IOException If the page cannot be read.
+	 */
+	public void scanFragments(BiConsumer<String, String> visitor) throws IOException {
+		boolean inContent = false;
+		
+		// The element that is being captured, and the number of unclosed tags with the same name
+		StringBuilder capture = null;
+		String captureName = null;
+		int depth = 0;
+		
+		int c;
+		
+		while ((c = reader.read()) >= 0) {
+			if (c != '<') {
+				if (capture != null)
+					capture.append((char) c);
+				continue;
+			}
+			
+			if (!readTag()) {
+				break;
+			}
+			
+			boolean closing = tag.length() > 0 && tag.charAt(0) == '/';
+			String name = getTagName(closing ? 1 : 0);
+			
+			if (capture != null) {
+				capture.append('<').append(tag).append('>');
+				
+				if (name.equals(captureName)) {
+					depth += closing ? -1 : 1;
+				}
+				if (depth == 0) {
+					visitor.accept(captureName, capture.toString());
+					capture = null;
+				}
+			} else if (!inContent) {
+				inContent = tag.indexOf(CONTENT_CLASS) >= 0;
+			} else if (!closing && CAPTURED_TAGS.contains(name)) {
+				capture = new StringBuilder().append('<').append(tag).append('>');
+				captureName = name;
+				depth = 1;
+			}
+		}
+	}
+	
+	/**
+	 * Read the content of the tag following an opening angle bracket, up to and excluding the closing bracket.
+	 * <p>
+	 * Comments are read in their entirety.
+	 * @return TRUE if the tag was terminated, FALSE if the page ended first.
+	 * @throws IOException If the page cannot be read.
+	 */
+	private boolean readTag() throws IOException {
+		char quote = 0;
+		int c;
+		
+		tag.setLength(0);
+		
+		while ((c = reader.read()) >= 0) {
+			if (c == '>' && quote == 0) {
+				// Comments may contain angle brackets of their own
+				if (!isComment() || endsWith("--"))
+					return true;
+			} else if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if ((c == '"' || c == '\'') && !isComment()) {
+				quote = (char) c;
+			}
+			tag.append((char) c);
+		}
+		return false;
+	}
+	
+	private boolean isComment() {
+		return tag.length() >= 3 && tag.indexOf("!--") == 0;
+	}
+	
+	private boolean endsWith(String suffix) {
+		return tag.length() >= suffix.length() + 3 && tag.lastIndexOf(suffix) == tag.length() - suffix.length();
+	}
+	
+	private String getTagName(int start) {
+		int end = start;
+		
+		while (end < tag.length() && Character.isLetterOrDigit(tag.charAt(end)))
+			end++;
+		return tag.substring(start, end).toLowerCase(Locale.ENGLISH);
+	}
+	
+	/**
+	 * Parse the HTML of a single element.
+	 * @param html - the HTML.
+	 * @return The element, or NULL if the HTML contains no element.
+	 */
+	static Element parseElement(String html) {
+		Element body = Jsoup.parseBodyFragment(html).body();
+		return body.children().isEmpty() ? null : body.child(0);
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+
+import com.comphenix.wrappit.WrapperGenerator.Feature;
+
+public class BytecodeGeneratorTest {
+	@BeforeClass
+	public static void initializeReflection() {
+		WrapperGeneratorTest.initializeReflection();
+	}
+	
+	@Test
+	public void testModifierAccessors() throws AnalyzerException {
+		ClassNode node = generate(EnumSet.noneOf(Feature.class));
+		
+		assertEquals(Collections.singleton("TYPE"), getFieldNames(node));
+		verify(node);
+	}
+	
+	@Test
+	public void testDirectAccessors() throws AnalyzerException {
+		ClassNode node = generate(EnumSet.of(Feature.DIRECT_ACCESSORS));
+		Set<String> fields = getFieldNames(node);
+		
+		// A getter and a setter for each field, besides TYPE
+		assertEquals(5, fields.size());
+		assertTrue(fields.contains("HEAD_YAW_GETTER"));
+		assertTrue(fields.contains("HEAD_YAW_SETTER"));
+		verify(node);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedFeature() {
+		new BytecodeGenerator(null, null, EnumSet.of(Feature.CODECS));
+	}
+	
+	private static ClassNode generate(Set<Feature> features) {
+		BytecodeGenerator generator = new BytecodeGenerator(null, null, features);
+		byte[] data = generator.generateClass(WrapperGeneratorTest.createHeadRotation(), WrapperGeneratorTest.createHeadRotationWiki());
+		ClassNode node = new ClassNode();
+		
+		new ClassReader(data).accept(node, 0);
+		return node;
+	}
+	
+	private static Set<String> getFieldNames(ClassNode node) {
+		Set<String> names = new HashSet<>();
+		
+		for (Object field : node.fields) {
+			names.add(((FieldNode) field).name);
+		}
+		return names;
+	}
+	
+	/**
+	 * Check that the stack and locals of every method are consistent.
+	 */
+	private static void verify(ClassNode node) throws AnalyzerException {
+		for (Object method : node.methods) {
+			new Analyzer(new BasicVerifier()).analyze(node.name, (MethodNode) method);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import org.bukkit.entity.Entity;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.comphenix.wrappit.WrapperGenerator.Feature;
+import com.comphenix.wrappit.compiler.WrapperCompiler;
+
+public class EntityIndexTest {
+	private static Class<?> tableClass;
+	
+	@BeforeClass
+	public static void compileIndex() throws Exception {
+		WrapperGeneratorTest.initializeReflection();
+		
+		ClassLoader loader = WrapperCompiler.createClassLoader(WrapperGeneratorTest.compile(EnumSet.of(Feature.ENTITY_INDEX)), 
+				EntityIndexTest.class.getClassLoader());
+		tableClass = loader.loadClass("com.comphenix.packetwrapper.EntityIndex$EntityTable");
+	}
+	
+	@Test
+	public void testInsertAndRemove() throws Exception {
+		Object table = createTable();
+		Entity[] entities = new Entity[200];
+		
+		// Enough entities to grow the table a few times
+		for (int i = 0; i < entities.length; i++) {
+			entities[i] = createEntity(i * 64);
+			put(table, entities[i]);
+		}
+		for (int i = 0; i < entities.length; i += 2) {
+			remove(table, Collections.singleton(i * 64));
+		}
+		
+		for (int i = 0; i < entities.length; i++) {
+			assertSame(i % 2 == 0 ? null : entities[i], get(table, i * 64));
+		}
+		assertNull(get(table, 1));
+	}
+	
+	@Test
+	public void testRemoveCopiesTable() throws Exception {
+		Object table = createTable();
+		Entity first = createEntity(1);
+		Entity second = createEntity(2);
+		
+		put(table, first);
+		put(table, second);
+		Entity[] before = getEntities(table);
+		remove(table, Arrays.asList(1, 3));
+		
+		// Readers of the previous array must still find every entity
+		assertNotSame(before, getEntities(table));
+		assertTrue(Arrays.asList(before).contains(first));
+		assertNull(get(table, 1));
+		assertSame(second, get(table, 2));
+	}
+	
+	@Test
+	public void testRemoveMissing() throws Exception {
+		Object table = createTable();
+		
+		put(table, createEntity(1));
+		Entity[] before = getEntities(table);
+		remove(table, Collections.singleton(2));
+		
+		assertSame(before, getEntities(table));
+	}
+	
+	private static Entity createEntity(final int entityId) {
+		return (Entity) Proxy.newProxyInstance(Entity.class.getClassLoader(), new Class<?>[] { Entity.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				switch (method.getName()) {
+					case "getEntityId": return entityId;
+					case "isValid": return true;
+					case "equals": return proxy == args[0];
+					case "hashCode": return entityId;
+					case "toString": return "Entity " + entityId;
+					default: throw new UnsupportedOperationException(method.getName());
+				}
+			}
+		});
+	}
+	
+	private static Object createTable() throws Exception {
+		Constructor<?> constructor = tableClass.getDeclaredConstructor();
+		
+		constructor.setAccessible(true);
+		return constructor.newInstance();
+	}
+	
+	private static Entity get(Object table, int entityId) throws Exception {
+		return (Entity) getMethod("get", int.class).invoke(table, entityId);
+	}
+	
+	private static void put(Object table, Entity entity) throws Exception {
+		getMethod("put", Entity.class).invoke(table, entity);
+	}
+	
+	private static void remove(Object table, Collection<Integer> entityIds) throws Exception {
+		getMethod("remove", Collection.class).invoke(table, entityIds);
+	}
+	
+	private static Entity[] getEntities(Object table) throws Exception {
+		Field field = tableClass.getDeclaredField("entities");
+		
+		field.setAccessible(true);
+		return (Entity[]) field.get(table);
+	}
+	
+	private static Method getMethod(String name, Class<?>... parameters) throws Exception {
+		Method method = tableClass.getDeclaredMethod(name, parameters);
+		
+		method.setAccessible(true);
+		return method;
+	}
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Listener;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.protocol.events.PacketContainer;
+import com.comphenix.protocol.utility.Constants;
+import com.comphenix.protocol.utility.MinecraftReflection;
+import com.comphenix.wrappit.WrapperGenerator.Feature;
+import com.comphenix.wrappit.compiler.WrapperCompiler;
+import com.comphenix.wrappit.io.MemorySink;
+import com.comphenix.wrappit.minecraft.CodeField;
+import com.comphenix.wrappit.minecraft.CodePacketInfo;
+import com.comphenix.wrappit.minecraft.WireType;
+import com.comphenix.wrappit.minecraft.WireType.Encoding;
+import com.comphenix.wrappit.wiki.WikiPacketField;
+import com.comphenix.wrappit.wiki.WikiPacketInfo;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+public class WrapperGeneratorTest {
+	private static final String NMS = "net/minecraft/server/v1_15_R1/";
+	private static final String NEWLN = System.getProperty("line.separator");
+	
+	@BeforeClass
+	public static void initializeReflection() {
+		MinecraftReflection.setMinecraftPackage(Constants.NMS, Constants.OBC);
+	}
+	
+	@Test
+	public void testCompile() throws IOException {
+		Map<String, byte[]> classes = compile(EnumSet.noneOf(Feature.class));
+		
+		assertTrue(classes.containsKey("com.comphenix.packetwrapper.WrapperPlayServerEntityHeadRotation"));
+		assertTrue(classes.containsKey("com.comphenix.packetwrapper.WrapperPlayServerChat"));
+	}
+	
+	@Test
+	public void testCompileFeatures() throws IOException {
+		Map<String, byte[]> classes = compile(EnumSet.allOf(Feature.class));
+		
+		assertTrue(classes.containsKey("com.comphenix.packetwrapper.PacketBroadcast"));
+		assertTrue(classes.containsKey("com.comphenix.packetwrapper.EntityIndex"));
+		assertTrue(classes.containsKey("com.comphenix.packetwrapper.WrapperPlayServerEntityHeadRotation$Codec"));
+	}
+	
+	@Test
+	public void testAccessorTypes() throws IOException {
+		String source = new WrapperGenerator(null, null).generateClass(createHeadRotation(), createHeadRotationWiki());
+		
+		// The wiki type is not a Java type, so the type of the modifier is used instead
+		assertTrue(source.contains("public byte getHeadYaw()"));
+		assertTrue(source.contains("import org.bukkit.entity.Entity;"));
+		assertFalse(source.contains("import java.lang.invoke.MethodHandle;"));
+	}
+	
+	@Test
+	public void testEntityMethods() throws IOException {
+		WrapperGenerator generator = new WrapperGenerator(null, null, EnumSet.of(Feature.ENTITY_INDEX));
+		
+		assertTrue(generator.generateClass(createHeadRotation(), createHeadRotationWiki()).contains("EntityIndex.getEntity(world, getEntityID())"));
+		
+		// The entity modifier cannot read arrays of entity IDs
+		assertFalse(generator.generateClass(createDestroy(), createDestroyWiki()).contains("public Entity getEntity(World world)"));
+	}
+	
+	@Test
+	public void testMethodHandleImports() throws IOException {
+		WrapperGenerator generator = new WrapperGenerator(null, null, EnumSet.of(Feature.DIRECT_ACCESSORS));
+		
+		assertTrue(generator.generateClass(createHeadRotation(), createHeadRotationWiki()).contains("import java.lang.invoke.MethodHandle;"));
+		
+		// Chat components and enums are converted by their modifiers
+		assertFalse(generator.generateClass(createChat(), createChatWiki()).contains("import java.lang.invoke.MethodHandle;"));
+	}
+	
+	@Test
+	public void testSnapshotCopies() throws IOException {
+		WrapperGenerator generator = new WrapperGenerator(null, null, EnumSet.of(Feature.SNAPSHOTS, Feature.DIRECT_ACCESSORS));
+		String source = generator.generateClass(createDestroy(), createDestroyWiki());
+		
+		// The array is the packet's own, so it must neither be stored nor handed out as is
+		assertTrue(source.contains("this.count = count != null ? count.clone() : null;"));
+		assertTrue(source.contains("return count != null ? count.clone() : null;"));
+	}
+	
+	@Test
+	public void testBuilderDefaults() throws IOException {
+		String source = new WrapperGenerator(null, null, EnumSet.of(Feature.BUILDERS)).generateClass(createChat(), createChatWiki());
+		String build = source.substring(source.indexOf("public WrapperPlayServerChat build() {"));
+		
+		// Every field is written once by build(), without the defaults pass of the public constructor
+		build = build.substring(0, build.indexOf("return packet;"));
+		assertTrue(build.contains("new WrapperPlayServerChat(this);"));
+		assertFalse(build.contains("writeDefaults"));
+		assertTrue(source.contains("private WrapperPlayServerChat(Builder builder) {" + NEWLN + 
+				"        super(new PacketContainer(TYPE), TYPE);" + NEWLN + "    }"));
+		
+		// The components field has no accessor, so it is always given its default value
+		assertTrue(build.contains("if (hasMessage)"));
+		assertTrue(build.contains("writeDefault(target, 1);"));
+		assertEquals(3, build.split("writeDefault\\(").length - 1);
+	}
+	
+	@Test
+	public void testWireClasses() throws IOException {
+		WrapperGenerator generator = new WrapperGenerator(null, null, EnumSet.of(Feature.CODECS, Feature.VIEWS));
+		String source = generator.generateClass(createHeadRotation(), createHeadRotationWiki());
+		
+		assertTrue(source.contains("public static final class Codec {"));
+		assertTrue(source.contains("public static final class View {"));
+	}
+	
+	@Test
+	public void testBranchedWireClasses() throws IOException {
+		WrapperGenerator generator = new WrapperGenerator(null, null, EnumSet.of(Feature.CODECS, Feature.VIEWS));
+		CodePacketInfo headRotation = createHeadRotation();
+		CodePacketInfo branched = new CodePacketInfo(headRotation.getMemoryOrder(), headRotation.getNetworkOrder(), 
+				Arrays.asList(headRotation.getWireType(0), headRotation.getWireType(1)), false, Collections.<String, List<String>>emptyMap(), 
+				headRotation.getType());
+		String source = generator.generateClass(branched, createHeadRotationWiki());
+		
+		assertFalse(source.contains("public static final class Codec {"));
+		assertFalse(source.contains("public static final class View {"));
+	}
+	
+	/**
+	 * Generate and compile the wrappers of every test packet, along with the support classes they need.
+	 * @param features - the features of the wrappers.
+	 * @return The compiled classes.
+	 * @throws IOException If the wrappers fail to compile.
+	 */
+	static Map<String, byte[]> compile(Set<Feature> features) throws IOException {
+		WrapperGenerator generator = new WrapperGenerator(null, null, features);
+		MemorySink sources = new MemorySink();
+		
+		put(sources, "WrapperPlayServerEntityHeadRotation.java", generator.generateClass(createHeadRotation(), createHeadRotationWiki()));
+		put(sources, "WrapperPlayServerChat.java", generator.generateClass(createChat(), createChatWiki()));
+		put(sources, "WrapperPlayServerEntityDestroy.java", generator.generateClass(createDestroy(), createDestroyWiki()));
+		generator.generateSupportClasses(sources);
+		WrapperGenerator.generateAbstractPacket(sources);
+		
+		return new WrapperCompiler(getClassPath(PacketContainer.class, Bukkit.class, Listener.class, Player.class, Objects.class, ByteBuf.class, ReferenceCounted.class)).compile(sources.getFiles());
+	}
+	
+	private static void put(MemorySink sink, String path, String source) throws IOException {
+		try (Writer writer = sink.openWriter(path)) {
+			writer.write(source);
+		}
+	}
+	
+	/**
+	 * Retrieve a class path with the location of each given class.
+	 * @param classes - the classes.
+	 * @return The class path.
+	 */
+	private static String getClassPath(Class<?>... classes) {
+		Set<String> paths = new LinkedHashSet<>();
+		
+		for (Class<?> clazz : classes) {
+			try {
+				paths.add(new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+			} catch (URISyntaxException e) {
+				throw new IllegalStateException("Cannot locate " + clazz, e);
+			}
+		}
+		return Joiner.on(File.pathSeparator).join(paths);
+	}
+	
+	static CodePacketInfo createHeadRotation() {
+		CodeField entityId = new CodeField(NMS + "PacketPlayOutEntityHeadRotation", "a", "I", Modifier.PRIVATE);
+		CodeField headYaw = new CodeField(NMS + "PacketPlayOutEntityHeadRotation", "b", "B", Modifier.PRIVATE);
+		List<CodeField> fields = Arrays.asList(entityId, headYaw);
+		List<WireType> wireTypes = Arrays.asList(
+				new WireType(NMS + "PacketDataSerializer", "d", "(I)L" + NMS + "PacketDataSerializer;", Encoding.VAR_INT, true),
+				new WireType("io/netty/buffer/ByteBuf", "writeByte", "(I)Lio/netty/buffer/ByteBuf;", Encoding.BYTE, true));
+		
+		return new CodePacketInfo(fields, fields, wireTypes, true, Collections.<String, List<String>>emptyMap(),
+				PacketType.Play.Server.ENTITY_HEAD_ROTATION);
+	}
+	
+	static WikiPacketInfo createHeadRotationWiki() {
+		return new WikiPacketInfo(PacketType.Play.Server.ENTITY_HEAD_ROTATION, Arrays.asList(
+				new WikiPacketField("Entity ID", "VarInt", ""),
+				new WikiPacketField("Head Yaw", "Angle", "New angle, not a delta")));
+	}
+	
+	static CodePacketInfo createDestroy() {
+		List<CodeField> fields = Collections.singletonList(new CodeField(NMS + "PacketPlayOutEntityDestroy", "a", "[I", Modifier.PRIVATE));
+		List<WireType> wireTypes = Collections.singletonList(
+				new WireType(NMS + "PacketDataSerializer", "d", "(I)L" + NMS + "PacketDataSerializer;", Encoding.VAR_INT, false));
+		
+		return new CodePacketInfo(fields, fields, wireTypes, false, Collections.<String, List<String>>emptyMap(),
+				PacketType.Play.Server.ENTITY_DESTROY);
+	}
+	
+	static WikiPacketInfo createDestroyWiki() {
+		return new WikiPacketInfo(PacketType.Play.Server.ENTITY_DESTROY, Arrays.asList(
+				new WikiPacketField("Count", "VarInt", "Number of elements in the following array"),
+				new WikiPacketField("Entity IDs", "Array of VarInt", "The list of entities to destroy")));
+	}
+	
+	static CodePacketInfo createChat() {
+		CodeField message = new CodeField(NMS + "PacketPlayOutChat", "a", "L" + NMS + "IChatBaseComponent;", Modifier.PRIVATE);
+		CodeField components = new CodeField(NMS + "PacketPlayOutChat", "components", "[Lnet/md_5/bungee/api/chat/BaseComponent;", Modifier.PUBLIC);
+		CodeField position = new CodeField(NMS + "PacketPlayOutChat", "b", "L" + NMS + "ChatMessageType;", Modifier.PRIVATE);
+		List<WireType> wireTypes = Arrays.asList(
+				new WireType(NMS + "PacketDataSerializer", "a", "(L" + NMS + "IChatBaseComponent;)L" + NMS + "PacketDataSerializer;", Encoding.OTHER, true),
+				new WireType("io/netty/buffer/ByteBuf", "writeByte", "(I)Lio/netty/buffer/ByteBuf;", Encoding.BYTE, false));
+		Map<String, List<String>> hierarchies = ImmutableMap.<String, List<String>>of(
+				position.getDescriptor(), Arrays.asList(Constants.NMS + ".ChatMessageType", "java.lang.Enum"));
+		
+		return new CodePacketInfo(Arrays.asList(message, components, position), Arrays.asList(message, position), wireTypes, true, hierarchies,
+				PacketType.Play.Server.CHAT);
+	}
+	
+	static WikiPacketInfo createChatWiki() {
+		return new WikiPacketInfo(PacketType.Play.Server.CHAT, Arrays.asList(
+				new WikiPacketField("JSON Data", "Chat", "Limited to 262144 bytes"),
+				new WikiPacketField("Position", "Byte", "0: chat (chat box), 1: system message (chat box), 2: game info (above hotbar)")));
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Test;
+
+public class ArchiveSinkTest {
+	@Test
+	public void testReproducible() throws Exception {
+		byte[] first = write("B.java", "A.java", "C.java");
+		
+		// Later runs, with the files written by other threads in another order
+		Thread.sleep(2000);
+		byte[] second = write("C.java", "A.java", "B.java");
+		
+		assertArrayEquals(first, second);
+	}
+	
+	@Test
+	public void testSortedEntries() throws IOException {
+		List<String> names = new ArrayList<>();
+		
+		try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(write("B.java", "A.java")))) {
+			for (ZipEntry entry; (entry = input.getNextEntry()) != null; ) {
+				names.add(entry.getName());
+			}
+		}
+		assertEquals(Arrays.asList("test/A.java", "test/B.java"), names);
+	}
+	
+	private static byte[] write(String... paths) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		
+		try (ArchiveSink sink = new ArchiveSink(output, "test/")) {
+			for (String path : paths) {
+				try (Writer writer = sink.openWriter(path)) {
+					writer.write("class " + path.substring(0, path.indexOf('.')) + " { }");
+				}
+			}
+		}
+		return output.toByteArray();
+	}
+}
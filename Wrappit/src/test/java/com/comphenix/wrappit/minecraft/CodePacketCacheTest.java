@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.minecraft;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.wrappit.minecraft.CodePacketCache.Entry;
+import com.comphenix.wrappit.minecraft.WireType.Encoding;
+import com.google.common.collect.ImmutableMap;
+
+public class CodePacketCacheTest {
+	private static final String NMS = "net/minecraft/server/v1_15_R1/";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testRoundTrip() throws IOException {
+		CodePacketCache cache = new CodePacketCache(folder.newFile());
+		Map<PacketType, Entry> packets = createPackets();
+		
+		cache.save("hash", packets);
+		assertPackets(packets, cache.load("hash"));
+	}
+	
+	@Test
+	public void testDifferentJar() throws IOException {
+		CodePacketCache cache = new CodePacketCache(folder.newFile());
+		
+		cache.save("hash", createPackets());
+		assertNull(cache.load("other"));
+	}
+	
+	@Test
+	public void testMissingFile() throws IOException {
+		CodePacketCache cache = new CodePacketCache(new File(folder.getRoot(), "missing"));
+		
+		assertNull(cache.load("hash"));
+	}
+	
+	private Map<PacketType, Entry> createPackets() {
+		Map<PacketType, Entry> packets = new HashMap<>();
+		CodeField keepAliveId = new CodeField(NMS + "PacketPlayOutKeepAlive", "a", "J", Modifier.PRIVATE);
+		CodeField message = new CodeField(NMS + "PacketPlayOutChat", "a", "L" + NMS + "IChatBaseComponent;", Modifier.PRIVATE);
+		CodeField components = new CodeField(NMS + "PacketPlayOutChat", "components", "[Lnet/md_5/bungee/api/chat/BaseComponent;", Modifier.PUBLIC);
+		CodeField position = new CodeField(NMS + "PacketPlayOutChat", "b", "L" + NMS + "ChatMessageType;", Modifier.PRIVATE | Modifier.FINAL);
+		
+		packets.put(PacketType.Play.Server.KEEP_ALIVE, new Entry(new CodePacketInfo(
+				Collections.singletonList(keepAliveId), Collections.singletonList(keepAliveId),
+				Collections.singletonList(new WireType("io/netty/buffer/ByteBuf", "writeLong", "(J)Lio/netty/buffer/ByteBuf;", Encoding.LONG, true)),
+				true, Collections.<String, List<String>>emptyMap(), PacketType.Play.Server.KEEP_ALIVE), "keepAlive"));
+		
+		// A field without a wire type, and a field that is only in memory
+		packets.put(PacketType.Play.Server.CHAT, new Entry(new CodePacketInfo(
+				Arrays.asList(message, components, position), Arrays.asList(message, position),
+				Arrays.asList(null, new WireType("io/netty/buffer/ByteBuf", "writeByte", "(I)Lio/netty/buffer/ByteBuf;", Encoding.BYTE, false)),
+				false, ImmutableMap.<String, List<String>>of(position.getDescriptor(), Arrays.asList(NMS + "ChatMessageType", "java.lang.Enum")),
+				PacketType.Play.Server.CHAT), "chat"));
+		return packets;
+	}
+	
+	private void assertPackets(Map<PacketType, Entry> expected, Map<PacketType, Entry> actual) {
+		assertNotNull(actual);
+		assertEquals(expected.keySet(), actual.keySet());
+		
+		for (PacketType type : expected.keySet()) {
+			CodePacketInfo expectedInfo = expected.get(type).getInfo();
+			CodePacketInfo actualInfo = actual.get(type).getInfo();
+			
+			assertEquals(expected.get(type).getBytecodeHash(), actual.get(type).getBytecodeHash());
+			assertEquals(type, actualInfo.getType());
+			assertEquals(expectedInfo.isStraightLine(), actualInfo.isStraightLine());
+			assertFields(expectedInfo.getMemoryOrder(), actualInfo.getMemoryOrder());
+			assertFields(expectedInfo.getNetworkOrder(), actualInfo.getNetworkOrder());
+			
+			for (int i = 0; i < expectedInfo.getNetworkOrder().size(); i++) {
+				assertWireType(expectedInfo.getWireType(i), actualInfo.getWireType(i));
+			}
+			for (CodeField field : expectedInfo.getMemoryOrder()) {
+				assertEquals(expectedInfo.getTypeHierarchy(field), actualInfo.getTypeHierarchy(field));
+			}
+		}
+	}
+	
+	private void assertFields(List<CodeField> expected, List<CodeField> actual) {
+		assertEquals(expected, actual);
+		
+		// Fields are only compared by name
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getDescriptor(), actual.get(i).getDescriptor());
+			assertEquals(expected.get(i).getAccess(), actual.get(i).getAccess());
+		}
+	}
+	
+	private void assertWireType(WireType expected, WireType actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertNotNull(actual);
+		assertEquals(expected.getOwner(), actual.getOwner());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getDescriptor(), actual.getDescriptor());
+		assertEquals(expected.getEncoding(), actual.getEncoding());
+		assertEquals(expected.isDirect(), actual.isDirect());
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.minecraft;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+
+import org.junit.Test;
+import org.objectweb.asm.Type;
+
+import com.comphenix.wrappit.minecraft.CodeClass.FieldWrite;
+import com.comphenix.wrappit.minecraft.WireType.Encoding;
+import com.google.common.io.ByteStreams;
+
+public class WireTypeAnalyzerTest {
+	private static final String WRITE_METHOD_DESC = "(Lio/netty/buffer/ByteBuf;)V";
+	
+	// Write packet methods of 1.15, written against the buffer instead of the packet serializer
+	static class Straight {
+		private int a;
+		private float b;
+		
+		public void b(ByteBuf buffer) {
+			buffer.writeInt(a);
+			buffer.writeFloat(b);
+		}
+	}
+	
+	static class Flags {
+		private boolean a;
+		private boolean b;
+		private float c;
+		
+		public void b(ByteBuf buffer) {
+			byte flags = 0;
+			
+			if (a)
+				flags |= 1;
+			if (b)
+				flags |= 2;
+			buffer.writeByte(flags);
+			buffer.writeFloat(c);
+		}
+	}
+	
+	static class Combined {
+		private int a;
+		private int b;
+		
+		public void b(ByteBuf buffer) {
+			buffer.writeInt(a << 16 | b);
+		}
+	}
+	
+	static class Loop {
+		private int[] a;
+		
+		public void b(ByteBuf buffer) {
+			buffer.writeInt(a.length);
+			
+			for (int id : a)
+				buffer.writeInt(id);
+		}
+	}
+	
+	static class Optional {
+		private int a;
+		private String b;
+		
+		public void b(ByteBuf buffer) {
+			buffer.writeInt(a);
+			buffer.writeBoolean(b != null);
+			
+			if (b != null)
+				buffer.writeBytes(b.getBytes());
+		}
+	}
+	
+	@Test
+	public void testStraightLine() throws IOException {
+		CodeClass codeClass = readClass(Straight.class);
+		
+		assertTrue(codeClass.isStraightLine());
+		assertEquals(Arrays.asList("a", "b"), getFieldNames(codeClass));
+		assertEquals(Encoding.INT, codeClass.getWriteOrder().get(0).getWireType().getEncoding());
+		assertEquals(Encoding.FLOAT, codeClass.getWriteOrder().get(1).getWireType().getEncoding());
+	}
+	
+	@Test
+	public void testUntracedWrite() throws IOException {
+		CodeClass codeClass = readClass(Flags.class);
+		
+		// The flags are only found through branches, so the byte they are written in is missing
+		assertFalse(codeClass.isStraightLine());
+		assertEquals(Arrays.asList("c"), getFieldNames(codeClass));
+	}
+	
+	@Test
+	public void testCombinedWrite() throws IOException {
+		CodeClass codeClass = readClass(Combined.class);
+		
+		assertFalse(codeClass.isStraightLine());
+		assertEquals(Arrays.asList("a", "b"), getFieldNames(codeClass));
+	}
+	
+	@Test
+	public void testLoop() throws IOException {
+		assertFalse(readClass(Loop.class).isStraightLine());
+	}
+	
+	@Test
+	public void testBranch() throws IOException {
+		assertFalse(readClass(Optional.class).isStraightLine());
+	}
+	
+	private CodeClass readClass(Class<?> clazz) throws IOException {
+		try (InputStream input = clazz.getResourceAsStream("/" + Type.getInternalName(clazz) + ".class")) {
+			return CodeClass.read(ByteStreams.toByteArray(input), "b", WRITE_METHOD_DESC);
+		}
+	}
+	
+	private List<String> getFieldNames(CodeClass codeClass) {
+		List<String> names = new ArrayList<>();
+		
+		for (FieldWrite write : codeClass.getWriteOrder()) {
+			names.add(write.getFieldName());
+		}
+		return names;
+	}
+}
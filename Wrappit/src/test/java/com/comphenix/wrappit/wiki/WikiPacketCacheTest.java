@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.wiki;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.comphenix.protocol.PacketType;
+
+public class WikiPacketCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testRoundTrip() throws IOException {
+		WikiPacketCache cache = new WikiPacketCache(folder.newFile());
+		Map<PacketType, WikiPacketInfo> packets = createPackets();
+		
+		cache.save("hash", packets);
+		assertPackets(packets, cache.load("hash"));
+	}
+	
+	@Test
+	public void testDifferentDocument() throws IOException {
+		WikiPacketCache cache = new WikiPacketCache(folder.newFile());
+		
+		cache.save("hash", createPackets());
+		assertNull(cache.load("other"));
+	}
+	
+	@Test
+	public void testAnyDocument() throws IOException {
+		WikiPacketCache cache = new WikiPacketCache(folder.newFile());
+		Map<PacketType, WikiPacketInfo> packets = createPackets();
+		
+		// Used when the page cannot be downloaded
+		cache.save("hash", packets);
+		assertPackets(packets, cache.load(null));
+	}
+	
+	@Test
+	public void testMissingFile() throws IOException {
+		WikiPacketCache cache = new WikiPacketCache(new File(folder.getRoot(), "missing"));
+		
+		assertNull(cache.load(null));
+	}
+	
+	private Map<PacketType, WikiPacketInfo> createPackets() {
+		Map<PacketType, WikiPacketInfo> packets = new HashMap<>();
+		
+		packets.put(PacketType.Play.Server.KEEP_ALIVE, new WikiPacketInfo(PacketType.Play.Server.KEEP_ALIVE, 
+				Collections.singletonList(new WikiPacketField("Keep Alive ID", "Long", null))));
+		packets.put(PacketType.Play.Client.CHAT, new WikiPacketInfo(PacketType.Play.Client.CHAT, Arrays.asList(
+				new WikiPacketField("Message", "String (256)", "The client sends the raw input"),
+				new WikiPacketField(null, null, ""))));
+		return packets;
+	}
+	
+	private void assertPackets(Map<PacketType, WikiPacketInfo> expected, Map<PacketType, WikiPacketInfo> actual) {
+		assertNotNull(actual);
+		assertEquals(expected.keySet(), actual.keySet());
+		
+		for (PacketType type : expected.keySet()) {
+			Iterator<WikiPacketField> actualFields = actual.get(type).getPacketFields().iterator();
+			
+			assertEquals(type, actual.get(type).getType());
+			
+			for (WikiPacketField field : expected.get(type).getPacketFields()) {
+				WikiPacketField actualField = actualFields.next();
+				
+				assertEquals(field.getFieldName(), actualField.getFieldName());
+				assertEquals(field.getFieldType(), actualField.getFieldType());
+				assertEquals(field.getNotes(), actualField.getNotes());
+			}
+			assertFalse(actualFields.hasNext());
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) dmulloy2 <http://dmulloy2.net>
+ * Copyright (C) Kristian S. Strangeland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.comphenix.wrappit.wiki;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+
+public class WikiStreamScannerTest {
+	// A fragment of the protocol page, with the markup the scanner must step around
+	private static final String PAGE = Joiner.on('\n').join(
+			"<html><body><table><tr><th>Navigation</th></tr></table>",
+			"<div id=\"mw-content-text\"><div class=\"mw-parser-output\">",
+			"<p>Intro <b>text</b></p>",
+			"<h2><span class=\"mw-headline\" id=\"Play\">Play</span></h2>",
+			"<h3><span class=\"mw-headline\">Clientbound</span></h3>",
+			"<table class=\"wikitable\">",
+			"<tr><th>Packet ID</th><th>State</th><th>Bound To</th><th>Field Name</th><th>Field Type</th><th>Notes</th></tr>",
+			"<tr><td rowspan=\"1\">0x21</td><td>Play</td><td>Client</td><td>Keep Alive ID</td><td>Long</td><td>Random <a href=\"x\">value</a></td></tr>",
+			"</table>",
+			"<!-- a comment with <table> inside -->",
+			"<h3><span class=\"mw-headline\">Serverbound</span></h3>",
+			"<table class=\"wikitable\">",
+			"<tr><th>Packet ID</th><th>State</th><th>Bound To</th><th>Field Name</th><th>Field Type</th><th>Notes</th></tr>",
+			"<tr><td rowspan=\"2\">0x03</td><td>Play</td><td>Server</td><td>Message</td><td>String (256)</td><td>Raw input</td></tr>",
+			"<tr><td>Nested</td><td><table><tr><td>x</td></tr></table></td><td>n</td></tr>",
+			"</table>",
+			"</div></div></body></html>");
+	
+	@Test
+	public void testFragments() throws IOException {
+		List<String> names = new ArrayList<>();
+		List<String> fragments = new ArrayList<>();
+		
+		new WikiStreamScanner(new StringReader(PAGE)).scanFragments((name, html) -> {
+			names.add(name);
+			fragments.add(html);
+		});
+		
+		// Neither the navigation before the content nor the commented out table is passed on
+		assertEquals(Arrays.asList("h2", "h3", "table", "h3", "table"), names);
+		assertTrue(fragments.get(2).contains("Keep Alive ID"));
+		
+		// Nested tables are part of the table that contains them
+		assertTrue(fragments.get(4).startsWith("<table class=\"wikitable\">"));
+		assertTrue(fragments.get(4).contains("<td>x</td></tr></table></td><td>n</td></tr>"));
+		assertTrue(fragments.get(4).endsWith("</table>"));
+	}
+	
+	@Test
+	public void testScan() throws IOException {
+		List<Element> elements = new ArrayList<>();
+		
+		new WikiStreamScanner(new StringReader(PAGE)).scan(elements::add);
+		
+		assertEquals(5, elements.size());
+		assertEquals("Play", elements.get(0).text());
+		assertEquals("Serverbound", elements.get(3).text());
+		assertEquals("table", elements.get(4).tagName());
+		assertEquals(3, elements.get(4).select("> tbody > tr").size());
+	}
+	
+	@Test
+	public void testTruncatedPage() throws IOException {
+		List<String> names = new ArrayList<>();
+		
+		// The table never ends, so it is never passed on
+		new WikiStreamScanner(new StringReader(PAGE.substring(0, PAGE.indexOf("Nested")))).scanFragments((name, html) -> names.add(name));
+		
+		assertEquals(Arrays.asList("h2", "h3", "table", "h3"), names);
+	}
+}